@@ -0,0 +1,126 @@
+package com.letibot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Ответы API для бенчмарков: одна группа и поток (файлы в fixtures/),
+// а также большой синтетический семестр, который собирается в памяти.
+// Формат повторяет ответ digital.etu.ru, включая поля, которые разбор пропускает.
+final class Fixtures {
+
+    static final String GROUP = "4354";
+    // последняя группа в файле потока: разбор проходит мимо всех остальных
+    static final String FACULTY_LAST_GROUP = "4360";
+
+    private static final String[] SUBJECTS = {
+            "Математический анализ", "Физика", "Объектно-ориентированное программирование",
+            "Алгоритмы и структуры данных", "Иностранный язык", "История России", "Дискретная математика",
+            "Физическая культура", "Базы данных", "Операционные системы", "Теория вероятностей", "Электротехника"
+    };
+    private static final String[] TYPES = {"Лек", "Пр", "Лаб"};
+    private static final String[] TEACHERS = {
+            "Иванов И.И.", "Петров П.П.", "Смирнова А.А.", "Кузнецов В.В.",
+            "Попова Е.С.", "Соколов Д.А.", "Лебедева О.Н.", "Новиков С.М."
+    };
+    private static final String[][] TIMES = {
+            {"08:00", "09:30"}, {"09:50", "11:20"}, {"11:40", "13:10"},
+            {"13:40", "15:10"}, {"15:30", "17:00"}, {"17:20", "18:50"}
+    };
+    private static final String[] DAYS = {"Понедельник", "Вторник", "Среда", "Четверг", "Пятница", "Суббота"};
+
+    private Fixtures() {
+    }
+
+    static String read(String name) {
+        try (InputStream input = Fixtures.class.getResourceAsStream("/fixtures/" + name)) {
+            if (input == null) {
+                throw new IllegalStateException("Нет файла fixtures/" + name);
+            }
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static String group() {
+        return read("group-" + GROUP + ".json");
+    }
+
+    static String faculty() {
+        return read("faculty-43xx.json");
+    }
+
+    // Группы 1000..1000+groups-1, по 2-6 пар в день; одинаковый seed - одинаковый результат
+    static String semester(int groups, long seed) {
+        Random random = new Random(seed);
+        StringBuilder json = new StringBuilder(groups * 12_000);
+        json.append('{');
+        for (int g = 0; g < groups; g++) {
+            if (g > 0) {
+                json.append(',');
+            }
+            appendGroup(json, random, String.valueOf(1000 + g), g);
+        }
+        return json.append('}').toString();
+    }
+
+    // Ответ API на запрос одной группы; расписание зависит только от номера
+    static String singleGroup(String number) {
+        StringBuilder json = new StringBuilder(12_000);
+        json.append('{');
+        appendGroup(json, new Random(number.hashCode()), number, number.hashCode());
+        return json.append('}').toString();
+    }
+
+    private static void appendGroup(StringBuilder json, Random random, String number, int id) {
+        json.append('"').append(number).append("\":{\"id\":").append(id)
+                .append(",\"fullNumber\":\"").append(number).append("\",\"semester\":1,\"days\":{");
+        boolean firstDay = true;
+        for (int day = 0; day < DAYS.length; day++) {
+            if (random.nextInt(8) == 0) {
+                continue;
+            }
+            if (!firstDay) {
+                json.append(',');
+            }
+            firstDay = false;
+            json.append('"').append(day).append("\":{\"name\":\"").append(DAYS[day]).append("\",\"lessons\":[");
+            int count = 2 + random.nextInt(5);
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendLesson(json, random, i);
+            }
+            json.append("]}");
+        }
+        json.append("}}");
+    }
+
+    private static void appendLesson(StringBuilder json, Random random, int slot) {
+        boolean online = random.nextInt(10) == 0;
+        String[] time = TIMES[slot];
+        json.append("{\"id\":").append(random.nextInt(1_000_000))
+                .append(",\"start_time\":\"").append(time[0])
+                .append("\",\"end_time\":\"").append(time[1])
+                .append("\",\"name\":\"").append(SUBJECTS[random.nextInt(SUBJECTS.length)])
+                .append("\",\"subjectType\":\"").append(TYPES[random.nextInt(TYPES.length)])
+                .append("\",\"teacher\":\"").append(TEACHERS[random.nextInt(TEACHERS.length)])
+                .append("\",\"second_teacher\":null,\"room\":\"").append(online ? "" : String.valueOf(1000 + random.nextInt(5000)))
+                .append("\",\"form\":\"").append(online ? "online" : "standard")
+                .append("\",\"week\":\"").append(1 + random.nextInt(3))
+                .append("\",\"url\":null,\"isDistant\":").append(online)
+                .append(",\"comment\":null}");
+    }
+
+    static GroupSchedule parse(String json, String group) {
+        try {
+            return ScheduleParser.parse(json, group);
+        } catch (ScheduleException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+}
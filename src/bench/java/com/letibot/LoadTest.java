@@ -0,0 +1,237 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.objects.Chat;
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.api.objects.User;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Нагрузочный прогон бота целиком: обновления от N пользователей M групп подаются в onUpdateReceived
+// с заданной частотой, API расписания и Telegram заменены локальными заглушками.
+// Задержка - от подачи обновления до прихода ответа в заглушку Telegram.
+// Частота повышается ступенями, пока p99 не превысит порог.
+//
+// mvn -Pbench compile exec:exec@loadtest -Dload.rates=200,500,1000 -Dload.etu.latency.ms=100
+public class LoadTest {
+
+    // Доли кнопок примерно как в журнале запросов: чаще всего "Сегодня" и "Ближайшее"
+    private static final String[] BUTTONS = {
+            "Сегодня", "Ближайшее", "Завтра", "Неделя", "Понедельник", "Среда", "Пятница", "/start"
+    };
+    private static final int[] WEIGHTS = {30, 25, 15, 15, 4, 3, 3, 5};
+
+    private final int users;
+    private final int groups;
+    private final long stepNanos;
+    private final double p99LimitMillis;
+    private final Map<Long, Queue<Long>> pending = new ConcurrentHashMap<>();
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder errorReplies = new LongAdder();
+    private final AtomicLong updateIds = new AtomicLong();
+    private volatile Recorder recorder = new Recorder();
+
+    private LoadTest(int users, int groups, long stepSeconds, double p99LimitMillis) {
+        this.users = users;
+        this.groups = groups;
+        this.stepNanos = TimeUnit.SECONDS.toNanos(stepSeconds);
+        this.p99LimitMillis = p99LimitMillis;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // без TCP_NODELAY заглушки отвечают с задержкой подтверждения (~40 мс) на каждый запрос
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        int users = Integer.getInteger("load.users", 20000);
+        int groups = Integer.getInteger("load.groups", 500);
+        long stepSeconds = Long.getLong("load.step.seconds", 10);
+        double p99Limit = Double.parseDouble(System.getProperty("load.p99.limit.ms", "1000"));
+        int[] rates = Arrays.stream(System.getProperty("load.rates", "100,250,500,1000,2000,4000").split(","))
+                .mapToInt(rate -> Integer.parseInt(rate.trim())).toArray();
+
+        LoadTest test = new LoadTest(users, groups, stepSeconds, p99Limit);
+        StubEtuApi etu = new StubEtuApi(URI.create(Config.getEtuApiUrl()),
+                Long.getLong("load.etu.latency.ms", 80),
+                Double.parseDouble(System.getProperty("load.etu.error.rate", "0")));
+        StubTelegramApi telegram = new StubTelegramApi(URI.create(Config.getTelegramApiUrl()),
+                Long.getLong("load.telegram.latency.ms", 20),
+                Double.parseDouble(System.getProperty("load.telegram.throttle.rate", "0")),
+                test::messageSent);
+        etu.start();
+        telegram.start();
+
+        System.out.printf("Пользователей: %d, групп: %d, ступень: %d с, порог p99: %.0f мс%n",
+                users, groups, stepSeconds, p99Limit);
+        for (int i = 0; i < users; i++) {
+            Config.setUserGroup(userId(i), String.valueOf(4000 + i % groups));
+        }
+
+        LetiScheduleBot bot = new LetiScheduleBot();
+        test.run(bot, rates, etu, telegram);
+
+        bot.shutdown();
+        etu.stop();
+        telegram.stop();
+        System.exit(0);
+    }
+
+    private static long userId(int index) {
+        return 100_000_000L + index;
+    }
+
+    private void run(LetiScheduleBot bot, int[] rates, StubEtuApi etu, StubTelegramApi telegram) {
+        System.out.println("Прогрев...");
+        step(bot, rates[0], Math.min(stepNanos, TimeUnit.SECONDS.toNanos(5)));
+
+        System.out.printf("%n%8s %9s %8s %7s %7s %8s %8s %8s %8s %7s %7s %7s%n",
+                "цель/с", "факт/с", "ответов", "потеря", "ошибок", "p50 мс", "p95 мс", "p99 мс", "max мс",
+                "ETU", "ETU304", "TG429");
+        int sustained = 0;
+        for (int rate : rates) {
+            long etuBefore = etu.requests.sum();
+            long notModifiedBefore = etu.notModified.sum();
+            long throttledBefore = telegram.throttled.sum();
+            long errorsBefore = errorReplies.sum();
+
+            StepResult result = step(bot, rate, stepNanos);
+            long[] latencies = result.latencies;
+            Arrays.sort(latencies);
+
+            System.out.printf("%8d %9.1f %8d %7d %7d %8.1f %8.1f %8.1f %8.1f %7d %7d %7d%n",
+                    rate, result.achievedRate, latencies.length, result.lost, errorReplies.sum() - errorsBefore,
+                    millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.95)),
+                    millis(percentile(latencies, 0.99)), millis(percentile(latencies, 1.0)),
+                    etu.requests.sum() - etuBefore, etu.notModified.sum() - notModifiedBefore,
+                    telegram.throttled.sum() - throttledBefore);
+
+            double p99 = millis(percentile(latencies, 0.99));
+            if (p99 > p99LimitMillis || result.lost > 0 || result.achievedRate < rate * 0.9) {
+                System.out.printf("%nНа %d обновлениях/с задержка или потери вышли за предел%n", rate);
+                break;
+            }
+            sustained = rate;
+        }
+        System.out.printf("Выдерживает без деградации: %d обновлений/с%n", sustained);
+        System.out.printf("Отправитель: отправлено %d, отброшено %d, ошибок %d, повторов %d%n",
+                bot.getSender().getSentCount(), bot.getSender().getDroppedCount(),
+                bot.getSender().getFailedCount(), bot.getSender().getRetriedCount());
+    }
+
+    private static final class StepResult {
+        long[] latencies;
+        double achievedRate;
+        long lost;
+    }
+
+    // Открытая модель нагрузки: обновления подаются по расписанию, независимо от ответов
+    private StepResult step(LetiScheduleBot bot, int rate, long durationNanos) {
+        recorder = new Recorder();
+        long period = TimeUnit.SECONDS.toNanos(1) / rate;
+        long started = System.nanoTime();
+        long submitted = 0;
+        for (long next = started; next - started < durationNanos; next += period) {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            submit(bot);
+            submitted++;
+        }
+        long elapsed = System.nanoTime() - started;
+
+        // ждём ответы на поданные обновления, но не бесконечно
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (inFlight.sum() > 0 && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+
+        StepResult result = new StepResult();
+        result.latencies = recorder.toArray();
+        result.achievedRate = submitted * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+        result.lost = inFlight.sum();
+        // неотвеченные обновления не переносим в следующую ступень
+        pending.clear();
+        inFlight.reset();
+        return result;
+    }
+
+    private void submit(LetiScheduleBot bot) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = userId(random.nextInt(users));
+
+        Message message = new Message();
+        message.setMessageId((int) updateIds.incrementAndGet());
+        message.setChat(new Chat(userId, "private"));
+        message.setFrom(new User(userId, "user", false));
+        message.setText(pickButton(random));
+        Update update = new Update();
+        update.setUpdateId((int) updateIds.get());
+        update.setMessage(message);
+
+        pending.computeIfAbsent(userId, id -> new ConcurrentLinkedQueue<>()).add(System.nanoTime());
+        inFlight.increment();
+        bot.onUpdateReceived(update);
+    }
+
+    private static String pickButton(ThreadLocalRandom random) {
+        int roll = random.nextInt(100);
+        for (int i = 0; i < BUTTONS.length; i++) {
+            roll -= WEIGHTS[i];
+            if (roll < 0) {
+                return BUTTONS[i];
+            }
+        }
+        return BUTTONS[0];
+    }
+
+    // На каждое обновление бот отвечает одним сообщением в тот же чат
+    private void messageSent(long chatId, String textStart) {
+        Queue<Long> queue = pending.get(chatId);
+        Long submittedAt = queue != null ? queue.poll() : null;
+        if (submittedAt == null) {
+            return;
+        }
+        inFlight.decrement();
+        recorder.add(System.nanoTime() - submittedAt);
+        if (textStart.startsWith("Ошибка")) {
+            errorReplies.increment();
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+    private static final class Recorder {
+        private long[] values = new long[1 << 16];
+        private int size;
+
+        synchronized void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        synchronized long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.letibot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// "Ближайшее": бинарный поиск по LessonTimeline против прежнего линейного просмотра дней.
+// Время запроса перебирается по кругу из заранее заготовленных точек, чтобы не мерить LocalDateTime.now()
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class NearestLessonBenchmark {
+
+    private static final int POINTS = 1024;
+
+    private GroupSchedule schedule;
+    private final int[] days = new int[POINTS];
+    private final int[] seconds = new int[POINTS];
+    private final WeekParity[] parities = new WeekParity[POINTS];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        schedule = Fixtures.parse(Fixtures.group(), Fixtures.GROUP);
+        Random random = new Random(7);
+        for (int i = 0; i < POINTS; i++) {
+            days[i] = random.nextInt(GroupSchedule.DAYS_IN_WEEK);
+            seconds[i] = random.nextInt(LessonTimeline.SECONDS_PER_DAY);
+            parities[i] = random.nextBoolean() ? WeekParity.ODD : WeekParity.EVEN;
+        }
+    }
+
+    @Benchmark
+    public String findNearestLesson() {
+        return ScheduleFetcher.findNearestLesson(schedule);
+    }
+
+    @Benchmark
+    public Lesson timelineLookup() {
+        int i = next++ & (POINTS - 1);
+        LessonTimeline timeline = schedule.getTimeline();
+        int index = timeline.indexAt(LessonTimeline.cyclePosition(days[i], seconds[i], parities[i]));
+        return index < 0 ? null : timeline.getLesson(index);
+    }
+
+    @Benchmark
+    public Lesson legacyScan() {
+        int i = next++ & (POINTS - 1);
+        return legacyNearest(schedule, days[i], LocalTime.ofSecondOfDay(seconds[i]), parities[i]);
+    }
+
+    @Benchmark
+    public LessonTimeline timelineBuild() {
+        return LessonTimeline.build(schedule);
+    }
+
+    // Прежний алгоритм: сегодня - перебор с учётом чётности, дальше - первое занятие дня без её учёта
+    private static Lesson legacyNearest(GroupSchedule schedule, int todayIndex, LocalTime now, WeekParity currentWeek) {
+        DaySchedule todaySchedule = schedule.getDay(todayIndex);
+        if (todaySchedule != null) {
+            List<Lesson> lessons = todaySchedule.getLessons();
+            int nearest = -1;
+            for (int i = 0; i < lessons.size(); i++) {
+                LocalTime lessonTime = lessons.get(i).getStartTime();
+                if (lessonTime != null && lessons.get(i).getWeek().matches(currentWeek) && !lessonTime.isBefore(now)) {
+                    if (nearest == -1 || lessonTime.isBefore(lessons.get(nearest).getStartTime())) {
+                        nearest = i;
+                    }
+                }
+            }
+            if (nearest != -1) {
+                return lessons.get(nearest);
+            }
+        }
+        for (int i = 1; i <= 7; i++) {
+            DaySchedule day = schedule.getDay((todayIndex + i) % 7);
+            if (day != null) {
+                return day.getLessons().get(0);
+            }
+        }
+        return null;
+    }
+}
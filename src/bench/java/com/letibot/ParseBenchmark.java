@@ -0,0 +1,43 @@
+package com.letibot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Разбор ответа API: одна группа, поток из 20 групп (нужная - последняя)
+// и синтетический семестр на 500 групп (нужная - в середине)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+    @Param({"group", "faculty", "semester"})
+    public String fixture;
+
+    private String json;
+    private String group;
+
+    @Setup
+    public void setUp() {
+        switch (fixture) {
+            case "group":
+                json = Fixtures.group();
+                group = Fixtures.GROUP;
+                break;
+            case "faculty":
+                json = Fixtures.faculty();
+                group = Fixtures.FACULTY_LAST_GROUP;
+                break;
+            default:
+                json = Fixtures.semester(500, 42);
+                group = "1250";
+        }
+    }
+
+    @Benchmark
+    public GroupSchedule parse() throws ScheduleException {
+        return ScheduleParser.parse(json, group);
+    }
+}
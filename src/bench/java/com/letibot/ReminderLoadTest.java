@@ -0,0 +1,133 @@
+package com.letibot;
+
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Нагрузочный прогон напоминаний: N подписчиков в M группах, у всех групп занятие в одну и ту же минуту.
+// Расписания берутся из снимка, Telegram заменён счётчиком без сети и без лимитов, поэтому меряется сам бот:
+// подписка, память на подписчика, время от срабатывания колеса до последней отправки и сохранение подписок.
+// Настоящий Telegram пропускает ~30 сообщений в секунду на бота - это запас, а не ожидаемая скорость доставки.
+//
+// mvn -Pbench compile exec:exec@reminderload -Dload.reminder.subscribers=1000000
+public class ReminderLoadTest {
+
+    // меньше минуты напоминание не настраивается, а время занятия - с точностью до минуты
+    private static final long LEAD_MINUTES = 1;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm");
+
+    public static void main(String[] args) throws Exception {
+        int subscribers = Integer.getInteger("load.reminder.subscribers", 1_000_000);
+        int groups = Integer.getInteger("load.reminder.groups", 2000);
+
+        // напоминание сработает через 30-90 с: подписка успевает закончиться
+        SemesterCalendar calendar = ScheduleFetcher.getCalendar();
+        LocalDateTime lessonStart = calendar.now().plusSeconds(TimeUnit.MINUTES.toSeconds(LEAD_MINUTES) + 90)
+                .truncatedTo(ChronoUnit.MINUTES);
+        long startMillis = lessonStart.atZone(calendar.getZone()).toInstant().toEpochMilli();
+        long fireMillis = startMillis - TimeUnit.MINUTES.toMillis(LEAD_MINUTES);
+
+        Files.deleteIfExists(Config.getReminderFile());
+        ScheduleSnapshot.save(Config.getScheduleSnapshotFile(), schedules(groups, lessonStart));
+        ScheduleFetcher.loadSnapshot();
+
+        long[] sentAt = new long[subscribers];
+        AtomicInteger sent = new AtomicInteger();
+        OutboundSender sender = new OutboundSender(method -> {
+            int index = sent.getAndIncrement();
+            if (index < sentAt.length) {
+                sentAt[index] = System.currentTimeMillis();
+            }
+        }, Config.getSenderThreads(), Config.getSenderQueueCapacity(),
+                Config.getSenderGlobalRate(), Config.getSenderChatRate(), Config.getSenderChatBurst());
+        ReminderService reminders = new ReminderService(sender, LEAD_MINUTES, Config.getReminderBatchSize(),
+                Config.getReminderTickMillis(), Config.getReminderFile());
+        reminders.start();
+
+        System.out.printf("Подписчиков: %d, групп: %d, пачка: %d, занятие в %s%n",
+                subscribers, groups, Config.getReminderBatchSize(), lessonStart.format(TIME_FORMAT));
+        long heapBefore = usedHeap();
+        long started = System.nanoTime();
+        for (int i = 0; i < subscribers; i++) {
+            reminders.subscribe(chatId(i), groupNumber(i % groups));
+        }
+        long subscribeMillis = (System.nanoTime() - started) / 1_000_000;
+        long heapAfter = usedHeap();
+        System.out.printf("Подписка: %d мс, в памяти +%d МБ (%d Б на подписчика), подписано %d%n",
+                subscribeMillis, (heapAfter - heapBefore) >> 20, (heapAfter - heapBefore) / subscribers,
+                reminders.getSubscriberCount());
+
+        System.out.printf("Срабатывание через %d с...%n", (fireMillis - System.currentTimeMillis()) / 1000);
+        // ждём всех отправок, но не дольше начала занятия и пары секунд сверху
+        while (sent.get() < subscribers && System.currentTimeMillis() < startMillis + 2000) {
+            Thread.sleep(50);
+        }
+
+        int delivered = Math.min(sent.get(), subscribers);
+        long[] delays = Arrays.copyOf(sentAt, delivered);
+        for (int i = 0; i < delivered; i++) {
+            delays[i] -= fireMillis;
+        }
+        Arrays.sort(delays);
+        long late = Metrics.counter("reminder_messages_late_total", "").sum();
+        System.out.printf("Разослано %d из %d после срабатывания: 50%% за %d мс, 99%% за %d мс, все за %d мс%n",
+                delivered, subscribers, percentile(delays, 0.50), percentile(delays, 0.99), percentile(delays, 1.0));
+        System.out.printf("Опоздали: %d, отброшено отправителем: %d%n", late, sender.getDroppedCount());
+
+        started = System.nanoTime();
+        reminders.stop();
+        System.out.printf("Сохранение подписок: %d мс, файл %d КБ%n",
+                (System.nanoTime() - started) / 1_000_000, Files.size(Config.getReminderFile()) >> 10);
+        sender.shutdown(1);
+
+        boolean passed = delivered == subscribers && late == 0 && sender.getDroppedCount() == 0
+                && percentile(delays, 1.0) < startMillis - fireMillis;
+        System.out.println(passed ? "Все напоминания ушли до начала занятия" : "Не все напоминания ушли до начала занятия");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // У каждой группы одно занятие в день прогона, на обеих неделях
+    private static List<GroupSchedule> schedules(int groups, LocalDateTime lessonStart) {
+        int dayIndex = lessonStart.getDayOfWeek().getValue() - 1;
+        String start = lessonStart.format(TIME_FORMAT);
+        String end = lessonStart.plusMinutes(90).format(TIME_FORMAT);
+        List<GroupSchedule> schedules = new ArrayList<>(groups);
+        for (int i = 0; i < groups; i++) {
+            DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+            days[dayIndex] = new DaySchedule(dayIndex, null, List.of(
+                    new Lesson(start, end, "Предмет " + i, "Лек", "", "101", "", WeekParity.ANY)));
+            schedules.add(new GroupSchedule(groupNumber(i), days, System.currentTimeMillis()));
+        }
+        return schedules;
+    }
+
+    private static String groupNumber(int index) {
+        return GroupNumbers.fromId(1000 + index);
+    }
+
+    private static long chatId(int index) {
+        return 100_000_000L + index;
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
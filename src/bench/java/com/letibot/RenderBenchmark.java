@@ -0,0 +1,51 @@
+package com.letibot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Тексты ответов: через кэш готовых ответов (как их получает пользователь)
+// и формирование без кэша (первый запрос после изменения расписания)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+    private GroupSchedule schedule;
+    private WeekParity parity;
+    private Lesson lesson;
+
+    @Setup
+    public void setUp() {
+        schedule = Fixtures.parse(Fixtures.group(), Fixtures.GROUP);
+        parity = ScheduleFetcher.currentWeekParity();
+        lesson = schedule.getTimeline().getLesson(0);
+    }
+
+    @Benchmark
+    public String parseScheduleForDay() throws ScheduleException {
+        return ScheduleFetcher.parseScheduleForDay(schedule, "monday");
+    }
+
+    @Benchmark
+    public String getWeekSchedule() {
+        return ScheduleFetcher.getWeekSchedule(schedule);
+    }
+
+    @Benchmark
+    public String renderDayUncached() {
+        return ScheduleFetcher.renderDay(schedule, 0, parity, true);
+    }
+
+    @Benchmark
+    public String renderWeekUncached() {
+        return ScheduleFetcher.renderWeek(schedule, parity, true);
+    }
+
+    @Benchmark
+    public String formatNearestLesson() {
+        return ScheduleFetcher.formatNearestLesson(lesson, "завтра");
+    }
+}
@@ -0,0 +1,132 @@
+package com.letibot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Заглушка API расписания: синтетическое расписание любой группы или списка групп через запятую,
+// ETag и 304 для одной группы, задержка ответа и доля ответов 500 задаются при создании
+class StubEtuApi {
+
+    private final HttpServer server;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "stub-etu");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ConcurrentHashMap<String, byte[]> bodies = new ConcurrentHashMap<>();
+    private final long latencyMillis;
+    private final double errorRate;
+
+    final LongAdder requests = new LongAdder();
+    final LongAdder notModified = new LongAdder();
+    final LongAdder errors = new LongAdder();
+    final LongAdder batches = new LongAdder();
+
+    StubEtuApi(URI apiUrl, long latencyMillis, double errorRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress(apiUrl.getHost(), apiUrl.getPort()), 1024);
+        this.server.createContext(apiUrl.getPath(), this::handle);
+        this.server.setExecutor(workers);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            sleep(latencyMillis);
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.increment();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            String group = queryParameter(exchange.getRequestURI().getQuery(), "groupNumber");
+            if (group.indexOf(',') >= 0) {
+                batches.increment();
+                writeJson(exchange, severalGroups(group.split(",")));
+                return;
+            }
+            String etag = "\"" + group + "-1\"";
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModified.increment();
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            writeJson(exchange, body(group));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private byte[] body(String group) {
+        return bodies.computeIfAbsent(group, g -> Fixtures.singleGroup(g).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Ответ на список групп: те же объекты групп под одним корнем
+    private byte[] severalGroups(String[] groups) {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        json.write('{');
+        for (int i = 0; i < groups.length; i++) {
+            byte[] body = body(groups[i]);
+            if (i > 0) {
+                json.write(',');
+            }
+            json.write(body, 1, body.length - 2);
+        }
+        json.write('}');
+        return json.toByteArray();
+    }
+
+    private static void writeJson(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    static String queryParameter(String query, String name) {
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                if (pair.startsWith(name + "=")) {
+                    return pair.substring(name.length() + 1);
+                }
+            }
+        }
+        return "";
+    }
+
+    static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
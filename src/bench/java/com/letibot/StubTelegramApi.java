@@ -0,0 +1,97 @@
+package com.letibot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Заглушка Telegram Bot API: принимает sendMessage, сообщает слушателю чат и начало текста,
+// с заданной вероятностью отвечает 429 с retry_after, чтобы проверить повторы отправки
+class StubTelegramApi {
+
+    interface Listener {
+        void messageSent(long chatId, String textStart);
+    }
+
+    private static final Pattern CHAT_ID = Pattern.compile("\"chat_id\"\\s*:\\s*\"?(-?\\d+)");
+    // текст сообщения бывает длинным (неделя), поэтому без возвратов: только начало строки
+    private static final Pattern TEXT = Pattern.compile("\"text\"\\s*:\\s*\"([^\"\\\\]{0,64})");
+
+    private final HttpServer server;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "stub-telegram");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long latencyMillis;
+    private final double throttleRate;
+    private final Listener listener;
+    private final AtomicInteger messageIds = new AtomicInteger();
+
+    final LongAdder calls = new LongAdder();
+    final LongAdder throttled = new LongAdder();
+
+    StubTelegramApi(URI baseUrl, long latencyMillis, double throttleRate, Listener listener) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.throttleRate = throttleRate;
+        this.listener = listener;
+        this.server = HttpServer.create(new InetSocketAddress(baseUrl.getHost(), baseUrl.getPort()), 1024);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(workers);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            calls.increment();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            StubEtuApi.sleep(latencyMillis);
+
+            if (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+                throttled.increment();
+                respond(exchange, 429, "{\"ok\":false,\"error_code\":429,"
+                        + "\"description\":\"Too Many Requests: retry after 1\",\"parameters\":{\"retry_after\":1}}");
+                return;
+            }
+
+            Matcher chat = CHAT_ID.matcher(body);
+            long chatId = chat.find() ? Long.parseLong(chat.group(1)) : 0;
+            Matcher text = TEXT.matcher(body);
+            listener.messageSent(chatId, text.find() ? text.group(1) : "");
+
+            respond(exchange, 200, "{\"ok\":true,\"result\":{\"message_id\":" + messageIds.incrementAndGet()
+                    + ",\"date\":" + System.currentTimeMillis() / 1000
+                    + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"}}}");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.letibot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Хранение группы пользователя: LongIntMap против HashMap<Long, String>.
+// Чтение - пропускная способность; заполнение - однократный прогон, выделенную память
+// показывает профилировщик gc (gc.alloc.rate.norm), а удерживаемый объём печатается в конце прогона.
+// При 10M пользователей обе карты вместе занимают больше 1.5 ГБ, поэтому куче форка дан запас.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Benchmark)
+@Fork(jvmArgsAppend = "-Xmx4g")
+public class UserMapBenchmark {
+
+    @Param({"1000000", "10000000"})
+    public int users;
+
+    private long[] keys;
+    private LongIntMap primitive;
+    private Map<Long, String> boxed;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(8);
+        keys = new long[users];
+        for (int i = 0; i < users; i++) {
+            // идентификаторы Telegram - положительные числа до ~10^10
+            keys[i] = 1 + (random.nextLong() & 0x3_FFFF_FFFFL);
+        }
+
+        long before = usedHeap();
+        primitive = fillPrimitive();
+        long afterPrimitive = usedHeap();
+        boxed = fillBoxed();
+        long afterBoxed = usedHeap();
+
+        System.out.printf("%nУдерживается на пользователя: LongIntMap %d Б (таблицы %d Б), HashMap<Long, String> %d Б%n",
+                (afterPrimitive - before) / users, primitive.footprintBytes() / users,
+                (afterBoxed - afterPrimitive) / users);
+    }
+
+    @Benchmark
+    public int getLongIntMap(Cursor cursor) {
+        return primitive.get(keys[cursor.next++ % users]);
+    }
+
+    @Benchmark
+    public String getHashMap(Cursor cursor) {
+        return boxed.get(keys[cursor.next++ % users]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public LongIntMap fillLongIntMap() {
+        return fillPrimitive();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Map<Long, String> fillHashMap() {
+        return fillBoxed();
+    }
+
+    private LongIntMap fillPrimitive() {
+        LongIntMap map = new LongIntMap();
+        for (int i = 0; i < users; i++) {
+            map.put(keys[i], 4300 + (i & 63));
+        }
+        return map;
+    }
+
+    // как было до LongIntMap: строка группы на каждого пользователя
+    private Map<Long, String> fillBoxed() {
+        Map<Long, String> map = new HashMap<>();
+        for (int i = 0; i < users; i++) {
+            map.put(keys[i], String.valueOf(4300 + (i & 63)));
+        }
+        return map;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
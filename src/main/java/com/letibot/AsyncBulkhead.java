@@ -0,0 +1,60 @@
+package com.letibot;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Семафор без блокировки: ожидающие стоят в очереди (не больше maxQueued) и получают место
+// от завершившегося запроса. Кто не дождался за waitMillis, получает TimeoutException;
+// его запись пропускается при следующем release()
+final class AsyncBulkhead {
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final long waitMillis;
+    private final ArrayDeque<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int inFlight;
+
+    AsyncBulkhead(int maxConcurrent, int maxQueued, long waitMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = maxQueued;
+        this.waitMillis = waitMillis;
+    }
+
+    CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            if (inFlight < maxConcurrent) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            if (waiters.size() >= maxQueued) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException());
+            }
+            waiters.add(waiter);
+        }
+        return waiter.orTimeout(waitMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            // место переходит ожидающему; если он уже отказался по таймауту - следующему
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+}
@@ -0,0 +1,163 @@
+package com.letibot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Автомат защиты для вызовов внешнего сервиса.
+// CLOSED: вызовы проходят, результаты последних windowSize вызовов хранятся в кольце.
+// Когда вызовов набралось не меньше minCalls и доля ошибок или медленных вызовов превысила порог,
+// автомат переходит в OPEN и openMillis отклоняет вызовы сразу. Затем HALF_OPEN: пропускается
+// halfOpenCalls пробных вызовов; если доля ошибок среди них ниже порога - снова CLOSED, иначе OPEN.
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte SUCCESS = 0;
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final int minCalls;
+    private final int failurePercent;
+    private final long slowCallNanos;
+    private final int slowPercent;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+
+    private final byte[] window;
+    private int position;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesStarted;
+    private int probesFinished;
+    private int probeFailures;
+
+    public CircuitBreaker(String name, int windowSize, int minCalls, int failurePercent,
+                          long slowCallMillis, int slowPercent, long openMillis, int halfOpenCalls) {
+        this(name, windowSize, minCalls, failurePercent, slowCallMillis, slowPercent, openMillis, halfOpenCalls,
+                System::nanoTime);
+    }
+
+    // nanoClock - источник времени в наносекундах, как System.nanoTime
+    CircuitBreaker(String name, int windowSize, int minCalls, int failurePercent, long slowCallMillis,
+                   int slowPercent, long openMillis, int halfOpenCalls, LongSupplier nanoClock) {
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failurePercent = failurePercent;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.slowPercent = slowPercent;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoClock = nanoClock;
+    }
+
+    // false - вызов делать нельзя; при true вызывающий обязан сообщить результат через onSuccess/onFailure/onIgnored
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesStarted = 0;
+            probesFinished = 0;
+            probeFailures = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesStarted >= halfOpenCalls) {
+                return false;
+            }
+            probesStarted++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long durationNanos) {
+        record(durationNanos >= slowCallNanos ? SLOW : SUCCESS);
+    }
+
+    public synchronized void onFailure() {
+        record(FAILURE);
+    }
+
+    // Разрешение получено, но вызов так и не состоялся
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && probesStarted > probesFinished) {
+            probesStarted--;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            probesFinished++;
+            if (outcome != SUCCESS) {
+                probeFailures++;
+            }
+            if (probeFailures * 100 >= failurePercent * halfOpenCalls) {
+                open();
+            } else if (probesFinished >= halfOpenCalls) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // результат вызова, начатого до размыкания
+            return;
+        }
+
+        if (recorded == window.length) {
+            forget(window[position]);
+        } else {
+            recorded++;
+        }
+        window[position] = outcome;
+        position = (position + 1) % window.length;
+        if (outcome == FAILURE) {
+            failures++;
+        } else if (outcome == SLOW) {
+            slowCalls++;
+        }
+
+        if (recorded >= minCalls && (failures * 100 >= failurePercent * recorded
+                || slowCalls * 100 >= slowPercent * recorded)) {
+            open();
+        }
+    }
+
+    private void forget(byte outcome) {
+        if (outcome == FAILURE) {
+            failures--;
+        } else if (outcome == SLOW) {
+            slowCalls--;
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        System.err.println(name + ": много ошибок или медленных ответов, запросы приостановлены на "
+                + TimeUnit.NANOSECONDS.toSeconds(openNanos) + " с");
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        position = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        System.out.println(name + ": сервис снова отвечает, запросы возобновлены");
+    }
+}
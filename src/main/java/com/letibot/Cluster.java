@@ -0,0 +1,33 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+// Связь экземпляров бота: какой экземпляр обрабатывает чат, пересылка обновлений владельцу
+// и оповещение об изменившихся расписаниях. LocalCluster - один экземпляр в процессе,
+// HttpCluster - несколько процессов или машин
+public interface Cluster {
+
+    interface Listener {
+        // обновление чата этого экземпляра, полученное от другого экземпляра
+        void updateReceived(Update update);
+
+        // обновление своего чата, которое не удалось передать его владельцу; обработать его здесь нельзя
+        void ownerUnavailable(Update update);
+
+        // у другого экземпляра расписание группы теперь с таким содержимым
+        void scheduleChanged(String groupNumber, int contentHash);
+    }
+
+    void start(Listener listener);
+
+    // true, если чат обрабатывается этим экземпляром
+    boolean isLocal(long chatId);
+
+    // Передаёт обновление экземпляру, который обрабатывает чат; обновления одного чата доходят по порядку
+    void forward(long chatId, Update update);
+
+    void publishScheduleChanged(String groupNumber, int contentHash);
+
+    default void close() {
+    }
+}
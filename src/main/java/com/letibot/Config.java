@@ -1,22 +1,35 @@
 package com.letibot;
 
 import java.io.*;
-import java.util.HashMap;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 public class Config {
     private static final Properties properties = new Properties();
-    private static final Map<Long, String> userGroups = new HashMap<>();
+    private static volatile UserSettingsStore userSettings;
 
     static {
         loadConfig();
+        userSettings = createUserSettingsStore();
     }
 
     private static void loadConfig() {
-        try (InputStream input = Config.class.getClassLoader().getResourceAsStream("config.properties")) {
+        // другое имя файла настроек можно задать через -Dconfig.resource (например, для бенчмарков)
+        String resource = System.getProperty("config.resource", "config.properties");
+        try (InputStream input = Config.class.getClassLoader().getResourceAsStream(resource)) {
             if (input == null) {
-                throw new RuntimeException("Файл config.properties не найден");
+                throw new RuntimeException("Файл " + resource + " не найден");
             }
             properties.load(input);
 
@@ -30,6 +43,20 @@ public class Config {
         }
     }
 
+    private static UserSettingsStore createUserSettingsStore() {
+        if (!"file".equals(properties.getProperty("user.store", "file"))) {
+            return new InMemoryUserSettingsStore();
+        }
+        try {
+            return new FileUserSettingsStore(
+                    Paths.get(properties.getProperty("user.store.dir", "data")),
+                    getLongProperty("user.store.compact.every", 100000),
+                    Boolean.parseBoolean(properties.getProperty("user.store.fsync", "true")));
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка загрузки настроек пользователей", e);
+        }
+    }
+
     public static String getBotUsername() {
         return properties.getProperty("telegram.bot.username");
     }
@@ -38,13 +65,453 @@ public class Config {
         return properties.getProperty("telegram.bot.token");
     }
 
+    public static String getTelegramApiUrl() {
+        return properties.getProperty("telegram.api.url", "");
+    }
+
+    public static int getSenderThreads() {
+        return (int) getLongProperty("sender.threads", 8);
+    }
+
+    public static int getSenderQueueCapacity() {
+        return (int) getLongProperty("sender.queue.capacity", 10000);
+    }
+
+    // Дробные значения допустимы: 0.5 - одно сообщение в две секунды
+    public static double getSenderGlobalRate() {
+        return getDoubleProperty("sender.global.per.second", 30);
+    }
+
+    public static double getSenderChatRate() {
+        return getDoubleProperty("sender.chat.per.second", 1);
+    }
+
+    public static double getSenderChatBurst() {
+        return getDoubleProperty("sender.chat.burst", 3);
+    }
+
+    // "inline" - расписание со встроенными кнопками, листание правит одно сообщение
+    public static boolean isInlineUi() {
+        return "inline".equals(properties.getProperty("ui.mode", "reply"));
+    }
+
+    public static boolean isWebhookMode() {
+        return "webhook".equals(properties.getProperty("bot.mode", "polling"));
+    }
+
+    // Обновления приходят только от других экземпляров: Telegram опрашивает или вызывает кто-то один из них
+    public static boolean isClusterOnlyMode() {
+        return "cluster".equals(properties.getProperty("bot.mode", "polling"));
+    }
+
+    public static String getWebhookUrl() {
+        return properties.getProperty("webhook.url", "");
+    }
+
+    // по умолчанию только локальный интерфейс: TLS для Telegram обычно снимает обратный прокси на той же машине
+    public static String getWebhookBindHost() {
+        return properties.getProperty("webhook.bind.host", "127.0.0.1");
+    }
+
+    public static int getWebhookPort() {
+        return (int) getLongProperty("webhook.port", 8443);
+    }
+
+    public static String getWebhookPath() {
+        return properties.getProperty("webhook.path", "/telegram");
+    }
+
+    public static String getWebhookSecret() {
+        return properties.getProperty("webhook.secret", "");
+    }
+
+    public static int getWebhookWorkers() {
+        return (int) getLongProperty("webhook.workers", 8);
+    }
+
+    public static int getWebhookMaxBodyBytes() {
+        return (int) getLongProperty("webhook.max.body.bytes", 1 << 20);
+    }
+
+    // "http" - несколько экземпляров из cluster.nodes, иначе один экземпляр
+    public static boolean isClusterMode() {
+        return "http".equals(properties.getProperty("cluster.mode", "local"));
+    }
+
+    public static String getClusterNode() {
+        return properties.getProperty("cluster.node", "").trim();
+    }
+
+    // cluster.nodes=bot-1=http://10.0.0.1:9200,bot-2=http://10.0.0.2:9200 - одинаково на всех экземплярах
+    public static Map<String, URI> getClusterNodes() {
+        Map<String, URI> nodes = new LinkedHashMap<>();
+        for (String node : properties.getProperty("cluster.nodes", "").split(",")) {
+            int separator = node.indexOf('=');
+            if (separator > 0) {
+                nodes.put(node.substring(0, separator).trim(), URI.create(node.substring(separator + 1).trim()));
+            }
+        }
+        return nodes;
+    }
+
+    public static String getClusterSecret() {
+        return properties.getProperty("cluster.secret", "");
+    }
+
+    // по умолчанию только локальный интерфейс; для экземпляров на разных машинах - адрес во внутренней сети
+    public static String getClusterBindHost() {
+        return properties.getProperty("cluster.bind.host", "127.0.0.1");
+    }
+
+    public static int getClusterVirtualNodes() {
+        return (int) getLongProperty("cluster.virtual.nodes", 128);
+    }
+
+    public static String getEtuApiUrl() {
+        return properties.getProperty("etu.api.url", "https://digital.etu.ru/api/mobile/schedule");
+    }
+
+    // Автомат защиты: размыкается, когда среди последних window запросов (не меньше min.calls)
+    // доля ошибок или ответов дольше slow.millis достигла порога
+    public static int getEtuBreakerWindow() {
+        return (int) getLongProperty("etu.breaker.window", 20);
+    }
+
+    public static int getEtuBreakerMinCalls() {
+        return (int) getLongProperty("etu.breaker.min.calls", 10);
+    }
+
+    public static int getEtuBreakerFailurePercent() {
+        return (int) getLongProperty("etu.breaker.failure.percent", 50);
+    }
+
+    public static long getEtuBreakerSlowMillis() {
+        return getLongProperty("etu.breaker.slow.millis", 5000);
+    }
+
+    public static int getEtuBreakerSlowPercent() {
+        return (int) getLongProperty("etu.breaker.slow.percent", 80);
+    }
+
+    public static long getEtuBreakerOpenSeconds() {
+        return getLongProperty("etu.breaker.open.seconds", 30);
+    }
+
+    public static int getEtuBreakerHalfOpenCalls() {
+        return (int) getLongProperty("etu.breaker.half.open.calls", 3);
+    }
+
+    public static int getEtuBulkheadMax() {
+        return (int) getLongProperty("etu.bulkhead.max", 10);
+    }
+
+    // Ожидание места не занимает поток, поэтому ограничено очередью загрузок, а время - с запасом
+    public static long getEtuBulkheadWaitMillis() {
+        return getLongProperty("etu.bulkhead.wait.millis", 10000);
+    }
+
+    public static int getEtuBulkheadQueue() {
+        return (int) getLongProperty("etu.bulkhead.queue", 1000);
+    }
+
+    public static int getEtuRetryAttempts() {
+        return (int) getLongProperty("etu.retry.attempts", 3);
+    }
+
+    public static long getEtuRetryBaseMillis() {
+        return getLongProperty("etu.retry.base.millis", 200);
+    }
+
+    public static long getEtuRetryMaxMillis() {
+        return getLongProperty("etu.retry.max.millis", 2000);
+    }
+
+    public static ZoneId getSemesterZone() {
+        String zone = properties.getProperty("semester.zone", "").trim();
+        try {
+            return zone.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        } catch (DateTimeException e) {
+            System.err.println("Некорректное значение semester.zone: " + zone);
+            return ZoneId.systemDefault();
+        }
+    }
+
+    // Дата начала семестра в формате ММ-ДД, одинаковая из года в год
+    public static MonthDay getAutumnSemesterStart() {
+        return getMonthDayProperty("semester.autumn.start", MonthDay.of(9, 1));
+    }
+
+    public static MonthDay getSpringSemesterStart() {
+        return getMonthDayProperty("semester.spring.start", MonthDay.of(2, 9));
+    }
+
+    // Фактическое начало текущего семестра (ГГГГ-ММ-ДД), если оно отличается от обычного
+    public static LocalDate getSemesterStart() {
+        String value = properties.getProperty("semester.start", "").trim();
+        try {
+            return value.isEmpty() ? null : LocalDate.parse(value);
+        } catch (DateTimeException e) {
+            System.err.println("Некорректное значение semester.start: " + value);
+            return null;
+        }
+    }
+
+    public static long getScheduleCacheTtlSeconds() {
+        return getLongProperty("schedule.cache.ttl.seconds", 600);
+    }
+
+    public static long getScheduleCacheStaleSeconds() {
+        return getLongProperty("schedule.cache.stale.seconds", 3600);
+    }
+
+    public static int getScheduleCacheMaxSize() {
+        return (int) getLongProperty("schedule.cache.max.size", 1000);
+    }
+
+    public static Path getScheduleSnapshotFile() {
+        return Paths.get(properties.getProperty("schedule.snapshot.file", "data/schedules.snapshot"));
+    }
+
+    public static long getScheduleSnapshotIntervalMinutes() {
+        return getLongProperty("schedule.snapshot.interval.minutes", 10);
+    }
+
+    public static boolean isPrefetchEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("prefetch.enabled", "true"));
+    }
+
+    public static long getPrefetchLeadMinutes() {
+        return getLongProperty("prefetch.lead.minutes", 25);
+    }
+
+    public static long getPrefetchJitterSeconds() {
+        return getLongProperty("prefetch.jitter.seconds", 120);
+    }
+
+    public static long getPrefetchMinRequests() {
+        return getLongProperty("prefetch.min.requests", 3);
+    }
+
+    public static int getPrefetchConcurrency() {
+        return (int) getLongProperty("prefetch.concurrency", 4);
+    }
+
+    public static int getPrefetchBudgetPerMinute() {
+        return (int) getLongProperty("prefetch.budget.per.minute", 60);
+    }
+
+    // Прогрев всех известных групп: при запуске и каждую ночь в preload.time
+    public static boolean isPreloadEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("preload.enabled", "true"));
+    }
+
+    public static boolean isPreloadOnStart() {
+        return Boolean.parseBoolean(properties.getProperty("preload.on.start", "true"));
+    }
+
+    public static LocalTime getPreloadTime() {
+        String value = properties.getProperty("preload.time", "04:30").trim();
+        try {
+            return LocalTime.parse(value);
+        } catch (DateTimeException e) {
+            System.err.println("Некорректное значение preload.time: " + value);
+            return LocalTime.of(4, 30);
+        }
+    }
+
+    public static int getPreloadConcurrency() {
+        return (int) getLongProperty("preload.concurrency", 2);
+    }
+
+    // Группы, которые прогреваются всегда, даже если их ещё никто не запрашивал: preload.groups=4301-4360,4454
+    public static List<String> getPreloadGroups() {
+        List<String> groups = new ArrayList<>();
+        for (String item : properties.getProperty("preload.groups", "").split(",")) {
+            String[] range = item.trim().split("-");
+            if (range.length > 2 || !GroupNumbers.isValid(range[0])
+                    || range.length == 2 && !GroupNumbers.isValid(range[1])) {
+                if (!item.isBlank()) {
+                    System.err.println("Некорректная группа в preload.groups: " + item);
+                }
+                continue;
+            }
+            int first = GroupNumbers.toId(range[0]);
+            int last = range.length == 2 ? GroupNumbers.toId(range[1]) : first;
+            for (int id = first; id <= last; id++) {
+                groups.add(GroupNumbers.fromId(id));
+            }
+        }
+        return groups;
+    }
+
+    // Групп в одном запросе к API. 1 - по запросу на группу, подряд по нескольким соединениям из пула.
+    // Больше 1 - номера через запятую в groupNumber; что API так умеет, не проверено: если оно отвергнет
+    // пакет или не вернёт из него ни одной группы, кэш сам вернётся к запросам по одной группе.
+    // Ответ на пакет не условный и без валидаторов для отдельных групп, поэтому выигрыш только в числе запросов
+    public static int getEtuBatchSize() {
+        return (int) Math.max(1, getLongProperty("etu.batch.size", 1));
+    }
+
+    public static boolean isReminderEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("reminder.enabled", "true"));
+    }
+
+    public static long getReminderLeadMinutes() {
+        return getLongProperty("reminder.lead.minutes", 15);
+    }
+
+    public static int getReminderBatchSize() {
+        return (int) getLongProperty("reminder.batch.size", 500);
+    }
+
+    public static long getReminderTickMillis() {
+        return getLongProperty("reminder.tick.millis", 1000);
+    }
+
+    public static Path getReminderFile() {
+        return Paths.get(properties.getProperty("reminder.file", "data/reminders.snapshot"));
+    }
+
+    public static boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("metrics.enabled", "true"));
+    }
+
+    public static String getMetricsHost() {
+        return properties.getProperty("metrics.host", "127.0.0.1");
+    }
+
+    public static int getMetricsPort() {
+        return (int) getLongProperty("metrics.port", 9091);
+    }
+
+    public static int getReplyCacheMaxSize() {
+        return (int) getLongProperty("reply.cache.max.size", 20000);
+    }
+
+    public static int getDispatcherThreads() {
+        return (int) getLongProperty("dispatcher.threads", 32);
+    }
+
+    public static int getDispatcherMaxPending() {
+        return (int) getLongProperty("dispatcher.max.pending", 1000);
+    }
+
+    public static int getDispatcherMaxPerChat() {
+        return (int) getLongProperty("dispatcher.max.per.chat", 10);
+    }
+
+    // Отсев повторных нажатий и лимит команд на пользователя
+    public static boolean isUpdateFilterEnabled() {
+        return Boolean.parseBoolean(properties.getProperty("bot.filter.enabled", "true"));
+    }
+
+    // Одинаковая команда чата в течение этого времени после ответа на неё не обрабатывается
+    public static long getDebounceMillis() {
+        return getLongProperty("bot.debounce.millis", 1000);
+    }
+
+    // Команд от одного пользователя в секунду и про запас; остальные отбрасываются
+    public static double getUserRate() {
+        return getDoubleProperty("bot.user.per.second", 1);
+    }
+
+    public static double getUserBurst() {
+        return getDoubleProperty("bot.user.burst", 10);
+    }
+
+    public static long getShutdownTimeoutSeconds() {
+        return getLongProperty("shutdown.timeout.seconds", 10);
+    }
+
+    public static int getHttpConnectTimeoutMillis() {
+        return (int) getLongProperty("http.connect.timeout.ms", 3000);
+    }
+
+    public static int getHttpSocketTimeoutMillis() {
+        return (int) getLongProperty("http.socket.timeout.ms", 10000);
+    }
+
+    public static long getHttpKeepAliveSeconds() {
+        return getLongProperty("http.keepalive.seconds", 30);
+    }
+
+    // простаивающих соединений в пуле клиента; больше, чем запросов в пути, держать незачем
+    public static int getHttpMaxConnections() {
+        return (int) getLongProperty("http.max.connections", getEtuBulkheadMax());
+    }
+
+    public static int getEtuHttpThreads() {
+        return (int) getLongProperty("etu.http.threads", 2);
+    }
+
+    public static int getScheduleParseThreads() {
+        return (int) getLongProperty("schedule.parse.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    // Сколько пользователь ждёт расписание, прежде чем получить ответ об ошибке; загрузка при этом продолжается
+    public static long getScheduleFetchTimeoutMillis() {
+        return getLongProperty("schedule.fetch.timeout.ms", 20000);
+    }
+
+    private static long getLongProperty(String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private static double getDoubleProperty(String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Некорректное значение " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
+    private static MonthDay getMonthDayProperty(String key, MonthDay defaultValue) {
+        String value = properties.getProperty(key, "").trim();
+        if (value.isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return MonthDay.parse("--" + value);
+        } catch (DateTimeException e) {
+            System.err.println("Некорректное значение " + key + ": " + value);
+            return defaultValue;
+        }
+    }
+
     public static void setUserGroup(long userId, String groupNumber) {
-        if (groupNumber.matches("\\d{4}")) {
-            userGroups.put(userId, groupNumber);
+        if (GroupNumbers.isValid(groupNumber)) {
+            userSettings.setUserGroup(userId, groupNumber);
         }
     }
 
     public static String getUserGroup(long userId) {
-        return userGroups.get(userId);
+        return userSettings.getUserGroup(userId);
+    }
+
+    public static UserSettingsStore getUserSettingsStore() {
+        return userSettings;
+    }
+
+    // Подменяет хранилище, например на распределённое между экземплярами поверх текущего
+    public static void setUserSettingsStore(UserSettingsStore store) {
+        userSettings = store;
+    }
+
+    public static void closeUserSettings() {
+        userSettings.close();
     }
 }
\ No newline at end of file
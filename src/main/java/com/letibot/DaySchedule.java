@@ -0,0 +1,50 @@
+package com.letibot;
+
+import java.util.List;
+import java.util.Objects;
+
+// Занятия одного дня недели, отсортированные по времени начала
+public final class DaySchedule {
+    private final int index;
+    private final String name;
+    private final List<Lesson> lessons;
+
+    public DaySchedule(int index, String name, List<Lesson> lessons) {
+        this.index = index;
+        this.name = name;
+        this.lessons = List.copyOf(lessons);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Lesson> getLessons() {
+        return lessons;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DaySchedule)) {
+            return false;
+        }
+        DaySchedule other = (DaySchedule) o;
+        return index == other.index && Objects.equals(name, other.name) && lessons.equals(other.lessons);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, name, lessons);
+    }
+
+    public boolean isEmpty() {
+        return lessons.isEmpty();
+    }
+}
@@ -0,0 +1,310 @@
+package com.letibot;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+// Настройки пользователей на диске: снимок (users.snapshot) + журнал изменений (users.log).
+// Чтение идёт только из памяти. Запись кладёт изменение в очередь, а отдельный поток
+// пачками дописывает его в журнал; когда журнал разрастается, состояние сбрасывается
+// в новый снимок и журнал обнуляется.
+public class FileUserSettingsStore implements UserSettingsStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x4C535531; // "LSU1"
+    private static final Record CLOSE = new Record(0, "");
+    // пауза между повторами неудачной записи: 1, 2, 4... секунды, не больше 30
+    private static final long RETRY_MAX_MILLIS = 30_000;
+    // при остановке журнал больше не ждём
+    private static final int CLOSE_ATTEMPTS = 3;
+
+    private static final class Record {
+        final long userId;
+        final String groupNumber;
+
+        Record(long userId, String groupNumber) {
+            this.userId = userId;
+            this.groupNumber = groupNumber;
+        }
+    }
+
+    private final Path snapshotFile;
+    private final Path logFile;
+    private final long compactEvery;
+    private final boolean fsync;
+    private final LongIntMap userGroups = new LongIntMap();
+    // порядок записей в журнале должен совпадать с порядком изменений одного пользователя
+    private final Object[] writeLocks = new Object[64];
+    private final BlockingQueue<Record> pending = new LinkedBlockingQueue<>();
+    private final Thread writer;
+
+    private FileOutputStream logStream;
+    private OutputStream logOutput;
+    private long recordsInLog;
+    // длина журнала по последней целиком записанной пачке
+    private long logLength;
+
+    private final LongAdder writeErrors = Metrics.counter("user_store_write_errors_total",
+            "Неудачные записи журнала настроек пользователей");
+
+    public FileUserSettingsStore(Path directory, long compactEvery, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+        this.snapshotFile = directory.resolve("users.snapshot");
+        this.logFile = directory.resolve("users.log");
+        this.compactEvery = compactEvery;
+        this.fsync = fsync;
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new Object();
+        }
+
+        long started = System.nanoTime();
+        readSnapshot();
+        long validLength = replayLog();
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // обрезаем недописанную при падении запись
+            channel.truncate(validLength);
+        }
+        logLength = validLength;
+        openLog(true);
+        System.out.println("Загружено пользователей: " + userGroups.size() + " за "
+                + (System.nanoTime() - started) / 1_000_000 + " мс, в памяти "
+                + userGroups.footprintBytes() / 1024 + " КБ");
+
+        this.writer = new Thread(this::writeLoop, "user-store-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public String getUserGroup(long userId) {
+        int groupId = userGroups.get(userId);
+        return groupId == LongIntMap.NO_VALUE ? null : GroupNumbers.fromId(groupId);
+    }
+
+    @Override
+    public void setUserGroup(long userId, String groupNumber) {
+        int groupId = GroupNumbers.toId(groupNumber);
+        synchronized (writeLocks[(int) (userId & (writeLocks.length - 1))]) {
+            if (userGroups.put(userId, groupId) != groupId) {
+                pending.add(new Record(userId, groupNumber));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        pending.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Пачка, которую не удалось записать, не выбрасывается: журнал обрезается до последней целой записи,
+    // и после паузы пачка пишется снова вместе с накопившимися изменениями
+    private void writeLoop() {
+        List<Record> batch = new ArrayList<>();
+        boolean closing = false;
+        int failures = 0;
+        while (!closing || !batch.isEmpty()) {
+            if (batch.isEmpty()) {
+                try {
+                    batch.add(pending.take());
+                } catch (InterruptedException e) {
+                    closing = true;
+                }
+            }
+            pending.drainTo(batch);
+            if (batch.remove(CLOSE)) {
+                closing = true;
+            }
+
+            try {
+                append(batch);
+                batch.clear();
+                if (failures > 0) {
+                    System.out.println("Журнал настроек пользователей снова записывается, ошибок подряд было: " + failures);
+                    failures = 0;
+                }
+            } catch (IOException e) {
+                failures++;
+                writeErrors.increment();
+                System.err.println("Ошибка записи настроек пользователей, изменений ждут повтора: "
+                        + batch.size() + ": " + e.getMessage());
+                if (closing && failures >= CLOSE_ATTEMPTS) {
+                    System.err.println("Журнал настроек не записан при остановке, потеряно изменений: " + batch.size());
+                    break;
+                }
+                reopenLog();
+                try {
+                    Thread.sleep(Math.min(RETRY_MAX_MILLIS, 1000L << Math.min(failures - 1, 5)));
+                } catch (InterruptedException interrupted) {
+                    closing = true;
+                }
+                continue;
+            }
+
+            if (recordsInLog >= compactEvery) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Ошибка сжатия журнала настроек: " + e.getMessage());
+                }
+            }
+        }
+
+        try {
+            logOutput.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия журнала настроек: " + e.getMessage());
+        }
+    }
+
+    private void append(List<Record> batch) throws IOException {
+        long written = 0;
+        for (Record record : batch) {
+            byte[] encoded = encode(record);
+            logOutput.write(encoded);
+            written += encoded.length;
+        }
+        logOutput.flush();
+        if (fsync) {
+            logStream.getChannel().force(false);
+        }
+        logLength += written;
+        recordsInLog += batch.size();
+    }
+
+    // После ошибки в журнале может остаться половина записи; при чтении всё после неё пропало бы
+    private void reopenLog() {
+        try {
+            // буфер не сбрасываем: его содержимое будет записано повтором
+            logStream.close();
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.truncate(logLength);
+            }
+            openLog(true);
+        } catch (IOException e) {
+            System.err.println("Не удалось переоткрыть журнал настроек: " + e.getMessage());
+        }
+    }
+
+    // Снимок пишется во временный файл и атомарно подменяет старый; только после этого журнал обнуляется.
+    // Если упасть между этими шагами, журнал просто проиграется поверх нового снимка ещё раз.
+    private void compact() throws IOException {
+        long started = System.nanoTime();
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        int count;
+
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            // сначала собираем копию, чтобы число записей в заголовке совпало с содержимым
+            LongIntMap copy = new LongIntMap(1, userGroups.size());
+            userGroups.forEach(copy::put);
+            count = copy.size();
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(count);
+            IOException[] failure = new IOException[1];
+            copy.forEach((userId, groupId) -> {
+                if (failure[0] == null) {
+                    try {
+                        out.writeLong(userId);
+                        out.writeUTF(GroupNumbers.fromId(groupId));
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        logOutput.close();
+        openLog(false);
+        recordsInLog = 0;
+        logLength = 0;
+        System.out.println("Снимок настроек: " + count + " пользователей за "
+                + (System.nanoTime() - started) / 1_000_000 + " мс");
+    }
+
+    private void openLog(boolean append) throws IOException {
+        logStream = new FileOutputStream(logFile.toFile(), append);
+        logOutput = new BufferedOutputStream(logStream, 1 << 16);
+    }
+
+    private void readSnapshot() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Неизвестный формат файла " + snapshotFile);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                userGroups.put(in.readLong(), GroupNumbers.toId(in.readUTF()));
+            }
+        }
+    }
+
+    // Возвращает длину корректной части журнала
+    private long replayLog() throws IOException {
+        if (!Files.exists(logFile)) {
+            return 0;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile), 1 << 16))) {
+            while (true) {
+                long userId;
+                byte[] group;
+                int checksum;
+                try {
+                    userId = in.readLong();
+                    group = new byte[in.readUnsignedShort()];
+                    in.readFully(group);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (checksum != checksum(userId, group)) {
+                    break;
+                }
+                userGroups.put(userId, GroupNumbers.toId(new String(group, StandardCharsets.UTF_8)));
+                validLength += 8 + 2 + group.length + 4;
+                recordsInLog++;
+            }
+        }
+        return validLength;
+    }
+
+    // Запись журнала: userId, длина и байты группы, CRC32 от них
+    private static byte[] encode(Record record) {
+        byte[] group = record.groupNumber.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(8 + 2 + group.length + 4)
+                .putLong(record.userId)
+                .putShort((short) group.length)
+                .put(group)
+                .putInt(checksum(record.userId, group))
+                .array();
+    }
+
+    private static int checksum(long userId, byte[] group) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(userId).array());
+        crc.update(group);
+        return (int) crc.getValue();
+    }
+}
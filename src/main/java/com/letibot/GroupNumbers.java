@@ -0,0 +1,32 @@
+package com.letibot;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Номер группы из 4 цифр хранится как int, строки для ответов создаются один раз на номер
+public final class GroupNumbers {
+
+    private static final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(10000);
+
+    private GroupNumbers() {
+    }
+
+    public static boolean isValid(String groupNumber) {
+        return groupNumber != null && groupNumber.matches("\\d{4}");
+    }
+
+    public static int toId(String groupNumber) {
+        if (!isValid(groupNumber)) {
+            throw new IllegalArgumentException("Некорректный номер группы: " + groupNumber);
+        }
+        return Integer.parseInt(groupNumber);
+    }
+
+    public static String fromId(int id) {
+        String name = names.get(id);
+        if (name == null) {
+            name = String.format("%04d", id);
+            names.compareAndSet(id, null, name);
+        }
+        return name;
+    }
+}
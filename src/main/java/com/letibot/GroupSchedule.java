@@ -0,0 +1,137 @@
+package com.letibot;
+
+import java.time.LocalTime;
+import java.util.Arrays;
+
+// Расписание группы на неделю. Дни индексируются с понедельника (0) по воскресенье (6)
+public final class GroupSchedule {
+    public static final int DAYS_IN_WEEK = 7;
+
+    private final String groupNumber;
+    private final DaySchedule[] days;
+    private final int contentHash;
+    private final long fetchedAt;
+    private final String etag;
+    private final String lastModified;
+    private final long bodyHash;
+    private volatile LessonTimeline timeline;
+
+    public GroupSchedule(String groupNumber, DaySchedule[] days, long fetchedAt) {
+        this(groupNumber, days, fetchedAt, null, null, 0);
+    }
+
+    public GroupSchedule(String groupNumber, DaySchedule[] days, long fetchedAt, String etag, String lastModified) {
+        this(groupNumber, days, fetchedAt, etag, lastModified, 0);
+    }
+
+    public GroupSchedule(String groupNumber, DaySchedule[] days, long fetchedAt, String etag, String lastModified,
+                         long bodyHash) {
+        if (days.length != DAYS_IN_WEEK) {
+            throw new IllegalArgumentException("Ожидается " + DAYS_IN_WEEK + " дней, получено " + days.length);
+        }
+        this.groupNumber = groupNumber;
+        this.days = days;
+        this.contentHash = 31 * groupNumber.hashCode() + Arrays.hashCode(days);
+        this.fetchedAt = fetchedAt;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.bodyHash = bodyHash;
+    }
+
+    // То же расписание с новым временем получения, валидаторами HTTP-кэша (ETag, Last-Modified) и хэшем ответа
+    public GroupSchedule withValidators(long fetchedAt, String etag, String lastModified, long bodyHash) {
+        GroupSchedule copy = new GroupSchedule(groupNumber, days, fetchedAt, etag, lastModified, bodyHash);
+        copy.timeline = timeline;
+        return copy;
+    }
+
+    public String getGroupNumber() {
+        return groupNumber;
+    }
+
+    // Когда расписание было получено от API, мс с начала эпохи
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    // Хэш распакованного тела ответа API, из которого получено расписание; 0 - неизвестен
+    public long getBodyHash() {
+        return bodyHash;
+    }
+
+    // Хэш содержимого: меняется только вместе с самим расписанием
+    public int getContentHash() {
+        return contentHash;
+    }
+
+    // null, если в этот день занятий нет
+    public DaySchedule getDay(int index) {
+        if (index < 0 || index >= DAYS_IN_WEEK) {
+            return null;
+        }
+        DaySchedule day = days[index];
+        return day == null || day.isEmpty() ? null : day;
+    }
+
+    // Начало первого занятия дня с учётом чётности недели, null если занятий нет
+    public LocalTime getFirstLessonStart(int dayIndex, WeekParity currentWeek) {
+        DaySchedule day = getDay(dayIndex);
+        if (day == null) {
+            return null;
+        }
+        LocalTime first = null;
+        for (Lesson lesson : day.getLessons()) {
+            LocalTime start = lesson.getStartTime();
+            if (start != null && lesson.getWeek().matches(currentWeek) && (first == null || start.isBefore(first))) {
+                first = start;
+            }
+        }
+        return first;
+    }
+
+    // Индекс занятий по времени; строится при первом обращении
+    public LessonTimeline getTimeline() {
+        LessonTimeline result = timeline;
+        if (result == null) {
+            result = LessonTimeline.build(this);
+            timeline = result;
+        }
+        return result;
+    }
+
+    // Совпадение по содержимому; время получения и валидаторы не учитываются
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof GroupSchedule)) {
+            return false;
+        }
+        GroupSchedule other = (GroupSchedule) o;
+        return contentHash == other.contentHash && groupNumber.equals(other.groupNumber)
+                && Arrays.equals(days, other.days);
+    }
+
+    @Override
+    public int hashCode() {
+        return contentHash;
+    }
+
+    public boolean hasLessons() {
+        for (int i = 0; i < DAYS_IN_WEEK; i++) {
+            if (getDay(i) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+package com.letibot;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Консистентное хеширование ключей (chat id) по экземплярам.
+// У каждого экземпляра virtualNodes точек на кольце 64-битных хешей; ключ принадлежит первой точке
+// не меньше своего хеша. При добавлении или удалении экземпляра переезжает только ~1/N ключей,
+// а не почти все, как при hash % N. Кольцо одинаково на всех экземплярах с одним списком узлов.
+final class HashRing {
+
+    private final long[] points;
+    private final String[] owners;
+
+    HashRing(Collection<String> nodes, int virtualNodes) {
+        long[][] pairs = new long[nodes.size() * virtualNodes][];
+        String[] names = nodes.toArray(new String[0]);
+        int count = 0;
+        for (int node = 0; node < names.length; node++) {
+            long nodeHash = hash(names[node]);
+            for (int i = 0; i < virtualNodes; i++) {
+                pairs[count++] = new long[]{LongIntMap.mix(nodeHash + i), node};
+            }
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(a[0], b[0]));
+
+        this.points = new long[count];
+        this.owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = names[(int) pairs[i][1]];
+        }
+    }
+
+    String ownerOf(long key) {
+        int index = Arrays.binarySearch(points, LongIntMap.mix(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    // FNV-1a, а не String.hashCode: у "bot-1" и "bot-2" он отличается на 1, и точки nodeHash + i совпали бы
+    private static long hash(String name) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
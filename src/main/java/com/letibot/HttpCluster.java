@@ -0,0 +1,419 @@
+package com.letibot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+// Несколько экземпляров бота с одним токеном. Чаты распределены между экземплярами по кольцу
+// консистентного хеширования chat id; обновления от Telegram (вебхук или long polling) может получать
+// любой экземпляр, чужие он пересылает владельцу чата. Все обновления чата обрабатывает один экземпляр,
+// поэтому порядок внутри чата и его состояние (подписка на напоминания) остаются на одном узле.
+// Настройки пользователя (номер группы) тоже распределены по кольцу, но по user id: их читает и пишет
+// экземпляр-владелец пользователя. В личном чате chat id совпадает с user id, и запрос остаётся локальным;
+// в групповом чате он уходит владельцу пользователя, и группа одна во всех чатах.
+// Узлы принимают только запросы с общим секретом; без cluster.secret экземпляр не запускается.
+// Пересылка: POST /cluster/update с Update в JSON. Изменение расписания: POST /cluster/schedule?group=&hash=
+// Настройки: POST /cluster/user/get?id= (в ответе номер группы или пустое тело), /cluster/user/set?id=&group=
+public class HttpCluster implements Cluster {
+
+    private static final String SECRET_HEADER = "X-Cluster-Secret";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    // Владелец отвечает на пересылку, когда обновление встало в его очередь, а при полной очереди
+    // ждёт места (webhook.max.pending) - поэтому ждём ответа дольше, чем на служебные запросы
+    private static final Duration FORWARD_TIMEOUT = Duration.ofSeconds(30);
+    // Одновременные пересылки одному экземпляру: остальные ждут в очереди, а не открывают
+    // по соединению на каждое обновление - при всплеске это перегружает принимающий HttpServer
+    private static final int MAX_FORWARDS_PER_NODE = 32;
+    private static final int MAX_QUEUED_FORWARDS = 10_000;
+
+    private final String self;
+    private final Map<String, URI> nodes;
+    private final HashRing ring;
+    private final String secret;
+    private final int maxBodyBytes;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(REQUEST_TIMEOUT)
+            .build();
+    private final Map<String, AsyncBulkhead> limits = new HashMap<>();
+    private final ExecutorService workers;
+    // ответ пользователю, чей владелец недоступен, не занимает потоки HttpClient
+    private final ExecutorService fallback;
+    private final UserSettingsStore localSettings;
+    private final UserSettingsStore userSettings = new RoutedUserSettings();
+    private final HttpServer server;
+    // завершение последней пересылки по каждому чату: следующая уходит только после ответа на неё
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> forwarding = new ConcurrentHashMap<>();
+    private volatile Listener listener;
+
+    private static final String FORWARD_HELP = "Обновления, пересланные экземпляру-владельцу чата";
+    private final LongAdder forwarded = Metrics.counter("cluster_forward_total", FORWARD_HELP, "result", "sent");
+    private final LongAdder forwardFailed = Metrics.counter("cluster_forward_total", FORWARD_HELP, "result", "failed");
+    private final LongAdder forwardRejected = Metrics.counter("cluster_forward_total", FORWARD_HELP,
+            "result", "rejected");
+    private final LongAdder forwardUnanswered = Metrics.counter("cluster_forward_total", FORWARD_HELP,
+            "result", "unanswered");
+    private final LongAdder received = Metrics.counter("cluster_forward_received_total",
+            "Обновления своих чатов, полученные от других экземпляров");
+    private static final String SCHEDULE_HELP = "Сообщения об изменении расписаний между экземплярами";
+    private final LongAdder schedulesSent = Metrics.counter("cluster_schedule_messages_total", SCHEDULE_HELP,
+            "direction", "sent");
+    private final LongAdder schedulesReceived = Metrics.counter("cluster_schedule_messages_total", SCHEDULE_HELP,
+            "direction", "received");
+    private static final String SETTINGS_HELP = "Обращения к настройкам пользователей на других экземплярах";
+    private final LongAdder settingsRemote = Metrics.counter("cluster_user_settings_total", SETTINGS_HELP,
+            "result", "ok");
+    private final LongAdder settingsFailed = Metrics.counter("cluster_user_settings_total", SETTINGS_HELP,
+            "result", "failed");
+
+    // nodes - все экземпляры, включая этот, в одинаковом виде на каждом из них
+    // bindHost - адрес, на котором слушает этот экземпляр; порт берётся из его записи в nodes
+    // localSettings - хранилище настроек пользователей, владельцем которых является этот экземпляр
+    public HttpCluster(String self, Map<String, URI> nodes, int virtualNodes, String secret, String bindHost,
+                       int workerThreads, int maxBodyBytes, UserSettingsStore localSettings) throws IOException {
+        if (!nodes.containsKey(self)) {
+            throw new IllegalArgumentException("Экземпляра " + self + " нет в списке узлов " + nodes.keySet());
+        }
+        if (secret.isEmpty()) {
+            throw new IllegalArgumentException("Не задан cluster.secret: без него пересылку примет кто угодно");
+        }
+        this.self = self;
+        this.nodes = nodes;
+        this.ring = new HashRing(nodes.keySet(), virtualNodes);
+        for (String node : nodes.keySet()) {
+            limits.put(node, new AsyncBulkhead(MAX_FORWARDS_PER_NODE, MAX_QUEUED_FORWARDS, FORWARD_TIMEOUT.toMillis()));
+        }
+        this.secret = secret;
+        this.maxBodyBytes = maxBodyBytes;
+        this.localSettings = localSettings;
+        this.fallback = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "cluster-fallback");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "cluster-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(bindHost, nodes.get(self).getPort()), 1024);
+        this.server.createContext("/cluster/", this::handle);
+        this.server.setExecutor(workers);
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        server.start();
+        System.out.println("Экземпляр " + self + " из " + nodes.size() + ", порт связи " + server.getAddress().getPort());
+    }
+
+    // Настройки пользователей с чтением и записью у экземпляра-владельца user id
+    public UserSettingsStore getUserSettings() {
+        return userSettings;
+    }
+
+    @Override
+    public boolean isLocal(long chatId) {
+        return self.equals(ring.ownerOf(chatId));
+    }
+
+    @Override
+    public void forward(long chatId, Update update) {
+        String owner = ring.ownerOf(chatId);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = forwarding.put(chatId, done);
+        CompletableFuture<Void> after = previous != null ? previous : CompletableFuture.completedFuture(null);
+        after.thenCompose(ignored -> send(owner, update)).whenComplete((result, error) -> {
+            forwarding.remove(chatId, done);
+            done.complete(null);
+        });
+    }
+
+    // Владелец отвечает, когда обновление уже в его очереди чата. Если оно до владельца точно
+    // не дошло (не удалось соединиться, очередь пересылок переполнена, ответ с ошибкой), здесь его
+    // не обрабатываем: состояние чата у владельца, а следующие обновления чата могут дойти до него
+    // раньше. Пользователю уходит только ответ, что бот временно недоступен. Если запрос ушёл,
+    // но ответа нет, владелец мог его уже обработать, и ничего не отправляем
+    private CompletableFuture<Void> send(String owner, Update update) {
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(update);
+        } catch (JsonProcessingException e) {
+            System.err.println("Не удалось переслать обновление: " + e.getMessage());
+            return CompletableFuture.runAsync(() -> listener.ownerUnavailable(update), fallback);
+        }
+        HttpRequest request = HttpRequest.newBuilder(nodes.get(owner).resolve("/cluster/update"))
+                .timeout(FORWARD_TIMEOUT)
+                .header(SECRET_HEADER, secret)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+        AsyncBulkhead limit = limits.get(owner);
+        return limit.acquire()
+                .thenCompose(permit -> client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, error) -> limit.release()))
+                .<Void>handleAsync((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        forwarded.increment();
+                        return null;
+                    }
+                    Throwable cause = error != null ? ScheduleCache.unwrap(error) : null;
+                    if (cause instanceof HttpTimeoutException && !(cause instanceof HttpConnectTimeoutException)) {
+                        forwardUnanswered.increment();
+                        System.err.println("Экземпляр " + owner + " не ответил на пересылку за "
+                                + FORWARD_TIMEOUT.toSeconds() + " с, обновление " + update.getUpdateId()
+                                + " могло быть не обработано");
+                        return null;
+                    }
+                    forwardFailed.increment();
+                    System.err.println("Экземпляр " + owner + " недоступен ("
+                            + (cause != null ? describe(cause) : "код " + response.statusCode())
+                            + "), обновление " + update.getUpdateId() + " не обработано");
+                    listener.ownerUnavailable(update);
+                    return null;
+                }, fallback)
+                .exceptionally(error -> {
+                    // экземпляр останавливается
+                    forwardRejected.increment();
+                    return null;
+                });
+    }
+
+    private static String describe(Throwable cause) {
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    // Другие экземпляры сверят содержимое со своим и при расхождении перечитают группу; ответ не ждём
+    @Override
+    public void publishScheduleChanged(String groupNumber, int contentHash) {
+        for (Map.Entry<String, URI> node : nodes.entrySet()) {
+            if (node.getKey().equals(self)) {
+                continue;
+            }
+            URI uri = node.getValue().resolve("/cluster/schedule?group="
+                    + URLEncoder.encode(groupNumber, StandardCharsets.UTF_8) + "&hash=" + contentHash);
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(REQUEST_TIMEOUT)
+                    .header(SECRET_HEADER, secret)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null) {
+                    // не страшно: у того экземпляра расписание обновится по истечении срока в кэше
+                    System.err.println("Экземпляр " + node.getKey() + " не получил изменение группы "
+                            + groupNumber + ": " + describe(ScheduleCache.unwrap(error)));
+                }
+            });
+            schedulesSent.increment();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        workers.shutdownNow();
+        fallback.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (!isSecretValid(exchange.getRequestHeaders().getFirst(SECRET_HEADER))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/cluster/update")) {
+                byte[] body = readBody(exchange.getRequestBody());
+                if (body == null) {
+                    exchange.sendResponseHeaders(413, -1);
+                    return;
+                }
+                Update update = mapper.readValue(body, Update.class);
+                received.increment();
+                listener.updateReceived(update);
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.equals("/cluster/schedule")) {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                String group = query.get("group");
+                if (group == null || !GroupNumbers.isValid(group)) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+                schedulesReceived.increment();
+                listener.scheduleChanged(group, Integer.parseInt(query.getOrDefault("hash", "0")));
+                exchange.sendResponseHeaders(200, -1);
+            } else if (path.equals("/cluster/user/get")) {
+                long userId = Long.parseLong(parseQuery(exchange.getRequestURI().getRawQuery()).get("id"));
+                String group = localSettings.getUserGroup(userId);
+                byte[] body = group != null ? group.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                exchange.sendResponseHeaders(200, body.length > 0 ? body.length : -1);
+                if (body.length > 0) {
+                    try (OutputStream output = exchange.getResponseBody()) {
+                        output.write(body);
+                    }
+                }
+            } else if (path.equals("/cluster/user/set")) {
+                Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+                long userId = Long.parseLong(query.get("id"));
+                String group = query.get("group");
+                if (group == null || !GroupNumbers.isValid(group)) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+                localSettings.setUserGroup(userId, group);
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Связь экземпляров: некорректный запрос: " + e.getMessage());
+            exchange.sendResponseHeaders(400, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query == null) {
+            return values;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                values.put(pair.substring(0, separator),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return values;
+    }
+
+    // null, если тело больше допустимого
+    private byte[] readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxBodyBytes) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    // Запрос к владельцу пользователя; ждёт ответа в потоке обработчика команды
+    private HttpResponse<String> callOwner(String owner, String pathAndQuery) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(nodes.get(owner).resolve(pathAndQuery))
+                .timeout(REQUEST_TIMEOUT)
+                .header(SECRET_HEADER, secret)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    // Пока владелец пользователя недоступен, используется хранилище этого экземпляра: выбор группы
+    // сохраняется в нём и не теряется, но владелец о нём не узнает
+    private final class RoutedUserSettings implements UserSettingsStore {
+
+        @Override
+        public String getUserGroup(long userId) {
+            String owner = ring.ownerOf(userId);
+            if (owner.equals(self)) {
+                return localSettings.getUserGroup(userId);
+            }
+            String problem;
+            try {
+                HttpResponse<String> response = callOwner(owner, "/cluster/user/get?id=" + userId);
+                if (response.statusCode() == 200) {
+                    settingsRemote.increment();
+                    String group = response.body();
+                    return GroupNumbers.isValid(group) ? group : null;
+                }
+                problem = "код " + response.statusCode();
+            } catch (IOException e) {
+                problem = describe(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                problem = "прервано";
+            }
+            settingsFailed.increment();
+            System.err.println("Экземпляр " + owner + " не вернул группу пользователя " + userId
+                    + " (" + problem + "), используется копия этого экземпляра");
+            return localSettings.getUserGroup(userId);
+        }
+
+        @Override
+        public void setUserGroup(long userId, String groupNumber) {
+            String owner = ring.ownerOf(userId);
+            if (owner.equals(self)) {
+                localSettings.setUserGroup(userId, groupNumber);
+                return;
+            }
+            String problem;
+            try {
+                HttpResponse<String> response = callOwner(owner, "/cluster/user/set?id=" + userId
+                        + "&group=" + URLEncoder.encode(groupNumber, StandardCharsets.UTF_8));
+                if (response.statusCode() == 200) {
+                    settingsRemote.increment();
+                    return;
+                }
+                problem = "код " + response.statusCode();
+            } catch (IOException e) {
+                problem = describe(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                problem = "прервано";
+            }
+            settingsFailed.increment();
+            System.err.println("Экземпляр " + owner + " не сохранил группу пользователя " + userId
+                    + " (" + problem + "), она сохранена только здесь");
+            localSettings.setUserGroup(userId, groupNumber);
+        }
+
+        @Override
+        public void close() {
+            localSettings.close();
+        }
+    }
+
+    private boolean isSecretValid(String header) {
+        return header != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), header.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,18 @@
+package com.letibot;
+
+// Настройки только в памяти: теряются при перезапуске
+public class InMemoryUserSettingsStore implements UserSettingsStore {
+
+    private final LongIntMap userGroups = new LongIntMap();
+
+    @Override
+    public String getUserGroup(long userId) {
+        int groupId = userGroups.get(userId);
+        return groupId == LongIntMap.NO_VALUE ? null : GroupNumbers.fromId(groupId);
+    }
+
+    @Override
+    public void setUserGroup(long userId, String groupNumber) {
+        userGroups.put(userId, GroupNumbers.toId(groupNumber));
+    }
+}
@@ -38,6 +38,7 @@ public class KeyboardManager {
 
         KeyboardRow row5 = new KeyboardRow();
         row5.add("Настройка группы");
+        row5.add("Напоминания");
         keyboard.add(row5);
 
         keyboardMarkup.setKeyboard(keyboard);
@@ -0,0 +1,107 @@
+package com.letibot;
+
+import java.time.LocalTime;
+import java.util.Objects;
+
+// Одно занятие. Пустые поля хранятся как "", время дополнительно разобрано в LocalTime
+public final class Lesson {
+    private final String startText;
+    private final String endText;
+    private final LocalTime startTime;
+    private final LocalTime endTime;
+    private final String name;
+    private final String subjectType;
+    private final String teacher;
+    private final String room;
+    private final String form;
+    private final WeekParity week;
+
+    public Lesson(String startText, String endText, String name, String subjectType,
+                  String teacher, String room, String form, WeekParity week) {
+        this.startText = startText;
+        this.endText = endText;
+        this.startTime = parseTime(startText);
+        this.endTime = parseTime(endText);
+        this.name = name;
+        this.subjectType = subjectType;
+        this.teacher = teacher;
+        this.room = room;
+        this.form = form;
+        this.week = week;
+    }
+
+    private static LocalTime parseTime(String text) {
+        if (text.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalTime.parse(text);
+        } catch (java.time.DateTimeException e) {
+            return null;
+        }
+    }
+
+    public String getStartText() {
+        return startText;
+    }
+
+    public String getEndText() {
+        return endText;
+    }
+
+    public LocalTime getStartTime() {
+        return startTime;
+    }
+
+    public LocalTime getEndTime() {
+        return endTime;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSubjectType() {
+        return subjectType;
+    }
+
+    public String getTeacher() {
+        return teacher;
+    }
+
+    public String getRoom() {
+        return room;
+    }
+
+    public String getForm() {
+        return form;
+    }
+
+    public WeekParity getWeek() {
+        return week;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Lesson)) {
+            return false;
+        }
+        Lesson other = (Lesson) o;
+        return startText.equals(other.startText) && endText.equals(other.endText)
+                && name.equals(other.name) && subjectType.equals(other.subjectType)
+                && teacher.equals(other.teacher) && room.equals(other.room)
+                && form.equals(other.form) && week == other.week;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(startText, endText, name, subjectType, teacher, room, form, week);
+    }
+
+    public boolean isOnline() {
+        return "online".equalsIgnoreCase(form) || "distant".equalsIgnoreCase(form);
+    }
+}
@@ -0,0 +1,132 @@
+package com.letibot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Все занятия группы за полный двухнедельный цикл (нечётная + чётная неделя),
+// отсортированные по времени начала. Строится один раз на версию расписания;
+// "ближайшее занятие" и "следующее после" - бинарный поиск по массиву секунд от начала цикла.
+// Секунда 0 цикла - понедельник, 00:00 нечётной недели.
+public final class LessonTimeline {
+    public static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    public static final int CYCLE_DAYS = 2 * GroupSchedule.DAYS_IN_WEEK;
+    public static final int CYCLE_SECONDS = CYCLE_DAYS * SECONDS_PER_DAY;
+
+    private final int[] starts;
+    private final Lesson[] lessons;
+    private final byte[] dayIndexes;
+    private final short[] lessonIndexes;
+
+    private LessonTimeline(int[] starts, Lesson[] lessons, byte[] dayIndexes, short[] lessonIndexes) {
+        this.starts = starts;
+        this.lessons = lessons;
+        this.dayIndexes = dayIndexes;
+        this.lessonIndexes = lessonIndexes;
+    }
+
+    public static LessonTimeline build(GroupSchedule schedule) {
+        List<long[]> items = new ArrayList<>();
+        List<Lesson> found = new ArrayList<>();
+
+        for (int week = 0; week < 2; week++) {
+            WeekParity parity = week == 0 ? WeekParity.ODD : WeekParity.EVEN;
+            for (int day = 0; day < GroupSchedule.DAYS_IN_WEEK; day++) {
+                DaySchedule daySchedule = schedule.getDay(day);
+                if (daySchedule == null) {
+                    continue;
+                }
+                List<Lesson> dayLessons = daySchedule.getLessons();
+                for (int i = 0; i < dayLessons.size(); i++) {
+                    Lesson lesson = dayLessons.get(i);
+                    // занятия без времени начала в поиск не попадают
+                    if (lesson.getStartTime() == null || !lesson.getWeek().matches(parity)) {
+                        continue;
+                    }
+                    int start = (week * GroupSchedule.DAYS_IN_WEEK + day) * SECONDS_PER_DAY
+                            + lesson.getStartTime().toSecondOfDay();
+                    items.add(new long[]{start, found.size(), day, i});
+                    found.add(lesson);
+                }
+            }
+        }
+
+        // порядок по времени начала, при равенстве - как в расписании
+        items.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+
+        int size = items.size();
+        int[] starts = new int[size];
+        Lesson[] lessons = new Lesson[size];
+        byte[] dayIndexes = new byte[size];
+        short[] lessonIndexes = new short[size];
+        for (int i = 0; i < size; i++) {
+            long[] item = items.get(i);
+            starts[i] = (int) item[0];
+            lessons[i] = found.get((int) item[1]);
+            dayIndexes[i] = (byte) item[2];
+            lessonIndexes[i] = (short) item[3];
+        }
+        return new LessonTimeline(starts, lessons, dayIndexes, lessonIndexes);
+    }
+
+    // Позиция в цикле для дня недели (0 - понедельник), секунды дня и чётности текущей недели
+    public static int cyclePosition(int dayIndex, int secondOfDay, WeekParity currentWeek) {
+        int week = currentWeek == WeekParity.EVEN ? 1 : 0;
+        return (week * GroupSchedule.DAYS_IN_WEEK + dayIndex) * SECONDS_PER_DAY + secondOfDay;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    // Первое занятие, начинающееся не раньше position; после конца цикла - первое занятие цикла.
+    // -1, если занятий нет вовсе
+    public int indexAt(int position) {
+        if (starts.length == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch(starts, position);
+        if (index < 0) {
+            index = -index - 1;
+        } else {
+            // при нескольких занятиях в одно время берём первое
+            while (index > 0 && starts[index - 1] == position) {
+                index--;
+            }
+        }
+        return index < starts.length ? index : 0;
+    }
+
+    // Следующее по времени занятие после index (с переходом через конец цикла)
+    public int next(int index) {
+        return starts.length == 0 ? -1 : (index + 1) % starts.length;
+    }
+
+    // Через сколько секунд от position начнётся занятие index (всегда в пределах одного цикла)
+    public int secondsUntil(int index, int position) {
+        int delta = starts[index] - position;
+        return delta >= 0 ? delta : delta + CYCLE_SECONDS;
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public Lesson getLesson(int index) {
+        return lessons[index];
+    }
+
+    // День недели занятия (0 - понедельник)
+    public int getDayIndex(int index) {
+        return dayIndexes[index];
+    }
+
+    // Номер занятия в списке своего дня
+    public int getLessonIndex(int index) {
+        return lessonIndexes[index];
+    }
+}
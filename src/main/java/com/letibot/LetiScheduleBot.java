@@ -1,15 +1,114 @@
 package com.letibot;
 
+import org.telegram.telegrambots.bots.DefaultBotOptions;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
 import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.CallbackQuery;
 import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.replykeyboard.ReplyKeyboardMarkup;
-import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 
 public class LetiScheduleBot extends TelegramLongPollingBot {
 
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    // Ответ, который строится из расписания группы
+    private interface ScheduleReply {
+        void send(GroupSchedule groupSchedule);
+    }
+
+    private static final LongAdder UNCHANGED_EDITS = Metrics.counter("telegram_edits_skipped_total",
+            "Нажатия встроенных кнопок, после которых сообщение не изменилось");
+
+    // Время обработки по обработчикам; набор меток ограничен, чтобы не плодить серии
+    private static final Histogram START_TIME = handlerHistogram("start");
+    private static final Histogram TODAY_TIME = handlerHistogram("today");
+    private static final Histogram TOMORROW_TIME = handlerHistogram("tomorrow");
+    private static final Histogram WEEK_TIME = handlerHistogram("week");
+    private static final Histogram NEAR_TIME = handlerHistogram("near");
+    private static final Histogram SETTINGS_TIME = handlerHistogram("settings");
+    private static final Histogram REMINDERS_TIME = handlerHistogram("reminders");
+    private static final Histogram GROUP_INPUT_TIME = handlerHistogram("group_input");
+    private static final Histogram DAY_TIME = handlerHistogram("day");
+    private static final Histogram SET_GROUP_TIME = handlerHistogram("set_group");
+    private static final Histogram OTHER_TIME = handlerHistogram("other");
+    private static final Histogram CALLBACK_TIME = handlerHistogram("callback");
+
+    private final UpdateDispatcher dispatcher = new UpdateDispatcher(
+            Config.getDispatcherThreads(),
+            Config.getDispatcherMaxPending(),
+            Config.getDispatcherMaxPerChat()
+    );
+
+    // null - отсев выключен
+    private final UpdateFilter filter = Config.isUpdateFilterEnabled() ? new UpdateFilter(
+            Config.getDebounceMillis(),
+            Config.getUserRate(),
+            Config.getUserBurst()
+    ) : null;
+
+    private final OutboundSender sender = new OutboundSender(
+            this::execute,
+            Config.getSenderThreads(),
+            Config.getSenderQueueCapacity(),
+            Config.getSenderGlobalRate(),
+            Config.getSenderChatRate(),
+            Config.getSenderChatBurst()
+    );
+
+    private final ReminderService reminders = new ReminderService(
+            sender,
+            Config.getReminderLeadMinutes(),
+            Config.getReminderBatchSize(),
+            Config.getReminderTickMillis(),
+            Config.getReminderFile()
+    );
+
+    private final Cluster cluster;
+
+    public LetiScheduleBot() {
+        this(new LocalCluster());
+    }
+
+    public LetiScheduleBot(Cluster cluster) {
+        super(createOptions());
+        this.cluster = cluster;
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("bot_updates_in_flight", "Обновления в обработке и в очереди", dispatcher::getPendingCount);
+        Metrics.gauge("bot_active_chats", "Чаты с необработанными обновлениями", dispatcher::getActiveChatCount);
+        Metrics.gauge("telegram_send_queue_depth", "Сообщения в очереди отправки", sender::getQueueDepth);
+        Metrics.counterOf("telegram_messages_total", "Исходящие сообщения по результату",
+                sender::getSentCount, "result", "sent");
+        Metrics.counterOf("telegram_messages_total", "Исходящие сообщения по результату",
+                sender::getDroppedCount, "result", "dropped");
+        Metrics.counterOf("telegram_messages_total", "Исходящие сообщения по результату",
+                sender::getFailedCount, "result", "failed");
+        Metrics.counterOf("telegram_messages_total", "Исходящие сообщения по результату",
+                sender::getRetriedCount, "result", "retried");
+        Metrics.gauge("reminder_subscribers", "Подписчики напоминаний", reminders::getSubscriberCount);
+    }
+
+    // Адрес Bot API можно подменить, например на локальную заглушку
+    private static DefaultBotOptions createOptions() {
+        DefaultBotOptions options = new DefaultBotOptions();
+        String apiUrl = Config.getTelegramApiUrl();
+        if (!apiUrl.isEmpty()) {
+            options.setBaseUrl(apiUrl);
+        }
+        return options;
+    }
+
     @Override
     public String getBotUsername() {
         return Config.getBotUsername();
@@ -20,50 +119,199 @@ public class LetiScheduleBot extends TelegramLongPollingBot {
         return Config.getBotToken();
     }
 
+    // Чат другого экземпляра пересылается ему, свой обрабатывается здесь
     @Override
     public void onUpdateReceived(Update update) {
-        try {
-            if (update.hasMessage() && update.getMessage().hasText()) {
-                handleMessage(update);
+        Long chatId = getChatId(update);
+        if (chatId == null) {
+            return;
+        }
+        if (cluster.isLocal(chatId)) {
+            dispatch(chatId, update);
+        } else {
+            cluster.forward(chatId, update);
+        }
+    }
+
+    // Обновление, которое другой экземпляр переслал сюда как владельцу чата
+    public void onForwardedUpdate(Update update) {
+        Long chatId = getChatId(update);
+        if (chatId != null) {
+            dispatch(chatId, update);
+        }
+    }
+
+    // Владелец чата недоступен: без его состояния команду не выполнить, сообщаем, что бот временно не отвечает
+    public void onOwnerUnavailable(Update update) {
+        Long chatId = getChatId(update);
+        if (chatId == null) {
+            return;
+        }
+        String text = "Бот временно недоступен, попробуйте через минуту";
+        if (update.hasCallbackQuery()) {
+            AnswerCallbackQuery answer = new AnswerCallbackQuery();
+            answer.setCallbackQueryId(update.getCallbackQuery().getId());
+            answer.setText(text);
+            sender.send(answer, chatId, OutboundSender.Priority.INTERACTIVE);
+        } else {
+            SendMessage message = new SendMessage();
+            message.setChatId(String.valueOf(chatId));
+            message.setText(text);
+            sender.send(message, chatId, OutboundSender.Priority.INTERACTIVE);
+        }
+    }
+
+    // Обработка уходит в пул, чтобы медленный ответ API не задерживал остальных пользователей.
+    // Пока расписание загружается, поток не занят: ответ отправит поток, завершивший загрузку.
+    // Повтор команды, которая ещё ждёт ответа, и команды сверх лимита пользователя в очередь не попадают
+    private void dispatch(long chatId, Update update) {
+        CallbackQuery query = update.getCallbackQuery();
+        String command = query != null
+                ? "callback:" + query.getMessage().getMessageId() + ':' + query.getData()
+                : update.getMessage().getText().trim();
+        long userId = query != null ? query.getFrom().getId()
+                : update.getMessage().getFrom() != null ? update.getMessage().getFrom().getId() : chatId;
+
+        UpdateFilter.Decision decision = filter != null
+                ? filter.tryAccept(chatId, userId, command, query != null) : UpdateFilter.Decision.ACCEPT;
+        if (decision != UpdateFilter.Decision.ACCEPT) {
+            // нажатие кнопки без ответа оставляет у пользователя часики на кнопке
+            if (query != null) {
+                AnswerCallbackQuery answer = new AnswerCallbackQuery();
+                answer.setCallbackQueryId(query.getId());
+                if (decision == UpdateFilter.Decision.THROTTLED) {
+                    answer.setText("Слишком много запросов, подождите немного");
+                }
+                sender.send(answer, chatId, OutboundSender.Priority.INTERACTIVE);
+            }
+            return;
+        }
+
+        boolean submitted = dispatcher.submitAsync(chatId, () -> {
+            CompletableFuture<Void> handled;
+            try {
+                handled = query != null ? processCallback(query) : processUpdate(update);
+            } catch (RuntimeException e) {
+                handled = CompletableFuture.failedFuture(e);
             }
-        } catch (TelegramApiException e) {
-            System.err.println("Telegram API: " + e.getMessage());
+            return filter != null ? handled.whenComplete((result, error) -> filter.completed(chatId, command)) : handled;
+        });
+        if (!submitted && filter != null) {
+            filter.cancel(chatId, command);
+        }
+    }
+
+    // null - обновление боту не нужно
+    private static Long getChatId(Update update) {
+        if (update.hasMessage() && update.getMessage().hasText()) {
+            return update.getMessage().getChatId();
+        }
+        if (update.hasCallbackQuery() && update.getCallbackQuery().getMessage() != null) {
+            return update.getCallbackQuery().getMessage().getChatId();
+        }
+        return null;
+    }
+
+    private CompletableFuture<Void> processCallback(CallbackQuery query) {
+        return recordTime(CALLBACK_TIME, this::handleCallback, query);
+    }
+
+    private CompletableFuture<Void> processUpdate(Update update) {
+        return recordTime(handlerTime(update.getMessage().getText().trim()), this::handleMessage, update);
+    }
+
+    // Время обработки считается до отправки ответа, а не до выхода из обработчика
+    private static <T> CompletableFuture<Void> recordTime(Histogram time, Function<T, CompletableFuture<Void>> handle,
+                                                          T input) {
+        long started = System.nanoTime();
+        return handle.apply(input).whenComplete((result, error) -> time.recordSince(started));
+    }
+
+    private static Histogram handlerHistogram(String handler) {
+        return Metrics.histogram("bot_handler_seconds", "Время обработки команды", "handler", handler);
+    }
+
+    private static Histogram handlerTime(String messageText) {
+        switch (messageText) {
+            case "/start":
+            case "/help":
+            case "Назад в меню":
+                return START_TIME;
+            case "Сегодня": return TODAY_TIME;
+            case "Завтра": return TOMORROW_TIME;
+            case "Неделя": return WEEK_TIME;
+            case "Ближайшее": return NEAR_TIME;
+            case "Настройка группы": return SETTINGS_TIME;
+            case "Напоминания": return REMINDERS_TIME;
+            case "Ввести свою группу": return GROUP_INPUT_TIME;
+            case "Понедельник":
+            case "Вторник":
+            case "Среда":
+            case "Четверг":
+            case "Пятница":
+            case "Суббота":
+                return DAY_TIME;
+            default:
+                return messageText.matches("\\d{2,5}") ? SET_GROUP_TIME : OTHER_TIME;
+        }
+    }
+
+    public OutboundSender getSender() {
+        return sender;
+    }
+
+    public void startReminders() {
+        if (Config.isReminderEnabled()) {
+            reminders.start();
+        }
+    }
+
+    public void shutdown() {
+        dispatcher.shutdown(Config.getShutdownTimeoutSeconds());
+        if (Config.isReminderEnabled()) {
+            reminders.stop();
+        }
+        sender.shutdown(Config.getShutdownTimeoutSeconds());
+        if (filter != null) {
+            filter.stop();
         }
     }
 
-    private void handleMessage(Update update) throws TelegramApiException {
+    private CompletableFuture<Void> handleMessage(Update update) {
         String messageText = update.getMessage().getText().trim();
         long chatId = update.getMessage().getChatId();
-        long userId = update.getMessage().getFrom().getId();
-
-        try {
-            if (messageText.equals("/start") || messageText.equals("/help") || messageText.equals("Назад в меню")) {
-                sendWelcomeMessage(chatId, userId);
-            } else if (messageText.equals("Сегодня")) {
-                handleToday(chatId, userId);
-            } else if (messageText.equals("Завтра")) {
-                handleTomorrow(chatId, userId);
-            } else if (messageText.equals("Неделя")) {
-                handleWeek(chatId, userId);
-            } else if (messageText.equals("Ближайшее")) {
-                handleNear(chatId, userId);
-            } else if (messageText.equals("Настройка группы")) {
-                handleSettings(chatId, userId);
-            } else if (messageText.equals("Понедельник")) {
-                handleDay(chatId, userId, "monday");
-            } else if (messageText.equals("Вторник")) {
-                handleDay(chatId, userId, "tuesday");
-            } else if (messageText.equals("Среда")) {
-                handleDay(chatId, userId, "wednesday");
-            } else if (messageText.equals("Четверг")) {
-                handleDay(chatId, userId, "thursday");
-            } else if (messageText.equals("Пятница")) {
-                handleDay(chatId, userId, "friday");
-            } else if (messageText.equals("Суббота")) {
-                handleDay(chatId, userId, "saturday");
-            } else if (messageText.equals("Ввести свою группу")) {
-                requestGroupInput(chatId);
-            } else if (messageText.matches("\\d{2,5}")) {
+        // у сообщений в каналах отправителя нет: как и в dispatch, вместо пользователя берётся чат
+        long userId = update.getMessage().getFrom() != null ? update.getMessage().getFrom().getId() : chatId;
+
+        if (messageText.equals("/start") || messageText.equals("/help") || messageText.equals("Назад в меню")) {
+            sendWelcomeMessage(chatId, userId);
+        } else if (messageText.equals("Сегодня")) {
+            return handleToday(chatId, userId);
+        } else if (messageText.equals("Завтра")) {
+            return handleTomorrow(chatId, userId);
+        } else if (messageText.equals("Неделя")) {
+            return handleWeek(chatId, userId);
+        } else if (messageText.equals("Ближайшее")) {
+            return handleNear(chatId, userId);
+        } else if (messageText.equals("Настройка группы")) {
+            handleSettings(chatId, userId);
+        } else if (messageText.equals("Напоминания")) {
+            handleReminders(chatId, userId);
+        } else if (messageText.equals("Понедельник")) {
+            return handleDay(chatId, userId, "monday");
+        } else if (messageText.equals("Вторник")) {
+            return handleDay(chatId, userId, "tuesday");
+        } else if (messageText.equals("Среда")) {
+            return handleDay(chatId, userId, "wednesday");
+        } else if (messageText.equals("Четверг")) {
+            return handleDay(chatId, userId, "thursday");
+        } else if (messageText.equals("Пятница")) {
+            return handleDay(chatId, userId, "friday");
+        } else if (messageText.equals("Суббота")) {
+            return handleDay(chatId, userId, "saturday");
+        } else if (messageText.equals("Ввести свою группу")) {
+            requestGroupInput(chatId);
+        } else if (messageText.matches("\\d{2,5}")) {
             //  любое число от 2 до 5 цифр
             if (messageText.matches("\\d{4}")) {
                 handleSetGroup(chatId, userId, messageText);
@@ -81,13 +329,7 @@ public class LetiScheduleBot extends TelegramLongPollingBot {
 //            } else {
 //                sendMessageWithKeyboard(chatId, "Используйте кнопки меню", KeyboardManager.getMainKeyboard());
 //            }
-        } catch (ScheduleException e) {
-            sendMessageWithKeyboard(chatId, "Ошибка: " + e.getMessage(), KeyboardManager.getMainKeyboard());
-        } catch (IOException e) {
-            sendMessageWithKeyboard(chatId, "Ошибка подключения к серверу", KeyboardManager.getMainKeyboard());
-        } catch (TelegramApiException e) {
-            throw e;
-        }
+        return DONE;
     }
 
 
@@ -99,7 +341,7 @@ public class LetiScheduleBot extends TelegramLongPollingBot {
 //        String welcomeText = "*Бот расписания ЛЭТИ*\n\n" + groupInfo;
 //        sendMessageWithKeyboard(chatId, welcomeText, KeyboardManager.getMainKeyboard());
 //    }
-private void sendWelcomeMessage(long chatId, long userId) throws TelegramApiException {
+private void sendWelcomeMessage(long chatId, long userId) {
     String userGroup = Config.getUserGroup(userId);
 
     if (userGroup != null) {
@@ -117,69 +359,66 @@ private void sendWelcomeMessage(long chatId, long userId) throws TelegramApiExce
 }
 
 
-    private void handleToday(long chatId, long userId) throws ScheduleException, IOException, TelegramApiException {
-        String userGroup = Config.getUserGroup(userId);
-        if (userGroup == null) {
-            sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
-            return;
-        }
-
-        String json = ScheduleFetcher.getScheduleForGroup(userGroup);
-        String today = ScheduleFetcher.getTodayDayName();
-        String schedule = ScheduleFetcher.parseScheduleForDay(json, today, userGroup);
-        sendMessageWithKeyboard(chatId, schedule, KeyboardManager.getMainKeyboard());
+    private CompletableFuture<Void> handleToday(long chatId, long userId) {
+        return replyWithSchedule(chatId, userId, groupSchedule -> sendSchedule(chatId, groupSchedule, ScheduleView.today()));
     }
 
-    private void handleTomorrow(long chatId, long userId) throws ScheduleException, IOException, TelegramApiException {
-        String userGroup = Config.getUserGroup(userId);
-        if (userGroup == null) {
-            sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
-            return;
-        }
+    private CompletableFuture<Void> handleTomorrow(long chatId, long userId) {
+        return replyWithSchedule(chatId, userId, groupSchedule -> sendSchedule(chatId, groupSchedule, ScheduleView.tomorrow()));
+    }
 
-        String json = ScheduleFetcher.getScheduleForGroup(userGroup);
-        String tomorrow = ScheduleFetcher.getTomorrowDayName();
-        String schedule = ScheduleFetcher.parseScheduleForDay(json, tomorrow, userGroup);
-        sendMessageWithKeyboard(chatId, schedule, KeyboardManager.getMainKeyboard());
+    private CompletableFuture<Void> handleWeek(long chatId, long userId) {
+        return replyWithSchedule(chatId, userId, groupSchedule -> sendSchedule(chatId, groupSchedule, ScheduleView.week()));
     }
 
-    private void handleWeek(long chatId, long userId) throws ScheduleException, IOException, TelegramApiException {
-        String userGroup = Config.getUserGroup(userId);
-        if (userGroup == null) {
-            sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
-            return;
-        }
+    private CompletableFuture<Void> handleNear(long chatId, long userId) {
+        return replyWithSchedule(chatId, userId, groupSchedule -> {
+            String nearest = ScheduleFetcher.findNearestLesson(groupSchedule);
+            sendSchedule(chatId, groupSchedule, nearest);
+        });
+    }
 
-        String json = ScheduleFetcher.getScheduleForGroup(userGroup);
-        String schedule = ScheduleFetcher.getWeekSchedule(json, userGroup);
-        sendMessageWithKeyboard(chatId, schedule, KeyboardManager.getMainKeyboard());
+    private CompletableFuture<Void> handleDay(long chatId, long userId, String day) {
+        return replyWithSchedule(chatId, userId,
+                groupSchedule -> sendSchedule(chatId, groupSchedule, ScheduleView.day(ScheduleFetcher.getDayIndex(day))));
     }
 
-    private void handleNear(long chatId, long userId) throws ScheduleException, IOException, TelegramApiException {
+    // Расписание группы пользователя загружается без блокировки; ответ или сообщение об ошибке
+    // уходит, когда загрузка завершится или истечёт schedule.fetch.timeout.ms
+    private CompletableFuture<Void> replyWithSchedule(long chatId, long userId, ScheduleReply reply) {
         String userGroup = Config.getUserGroup(userId);
         if (userGroup == null) {
             sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
-            return;
+            return DONE;
         }
 
-        String json = ScheduleFetcher.getScheduleForGroup(userGroup);
-        String nearest = ScheduleFetcher.findNearestLesson(json, userGroup);
-        sendMessageWithKeyboard(chatId, nearest, KeyboardManager.getMainKeyboard());
+        return fetchSchedule(userGroup).handle((groupSchedule, error) -> {
+            if (error == null) {
+                reply.send(groupSchedule);
+            } else {
+                sendMessageWithKeyboard(chatId, errorText(error), KeyboardManager.getMainKeyboard());
+            }
+            return null;
+        });
     }
 
-    private void handleDay(long chatId, long userId, String day) throws ScheduleException, IOException, TelegramApiException {
-        String userGroup = Config.getUserGroup(userId);
-        if (userGroup == null) {
-            sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
-            return;
-        }
+    private static CompletableFuture<GroupSchedule> fetchSchedule(String userGroup) {
+        return ScheduleFetcher.fetchAsync(userGroup)
+                .orTimeout(Config.getScheduleFetchTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
 
-        String json = ScheduleFetcher.getScheduleForGroup(userGroup);
-        String schedule = ScheduleFetcher.parseScheduleForDay(json, day, userGroup);
-        sendMessageWithKeyboard(chatId, schedule, KeyboardManager.getMainKeyboard());
+    private static String errorText(Throwable error) {
+        Throwable cause = ScheduleCache.unwrap(error);
+        if (cause instanceof ScheduleException) {
+            return "Ошибка: " + cause.getMessage();
+        }
+        if (!(cause instanceof IOException) && !(cause instanceof TimeoutException)) {
+            System.err.println("Ошибка загрузки расписания: " + cause);
+        }
+        return "Ошибка подключения к серверу";
     }
 
-    private void handleSettings(long chatId, long userId) throws TelegramApiException {
+    private void handleSettings(long chatId, long userId) {
         String userGroup = Config.getUserGroup(userId);
         String currentGroupInfo = userGroup != null ? "Текущая группа: *" + userGroup + "*\n\n" : "";
 
@@ -188,9 +427,35 @@ private void sendWelcomeMessage(long chatId, long userId) throws TelegramApiExce
         sendMessageWithKeyboard(chatId, settingsText, KeyboardManager.getGroupSetupKeyboard());
     }
 
-    private void handleSetGroup(long chatId, long userId, String groupNumber) throws TelegramApiException {
+    private void handleReminders(long chatId, long userId) {
+        if (!Config.isReminderEnabled()) {
+            sendMessageWithKeyboard(chatId, "Напоминания сейчас недоступны", KeyboardManager.getMainKeyboard());
+            return;
+        }
+        if (reminders.isSubscribed(chatId)) {
+            reminders.unsubscribe(chatId);
+            sendMessageWithKeyboard(chatId, "Напоминания выключены", KeyboardManager.getMainKeyboard());
+            return;
+        }
+
+        String userGroup = Config.getUserGroup(userId);
+        if (userGroup == null) {
+            sendMessageWithKeyboard(chatId, "Сначала установите группу", KeyboardManager.getMainKeyboard());
+            return;
+        }
+        reminders.subscribe(chatId, userGroup);
+        sendMessageWithKeyboard(chatId, "Напоминания включены: за " + reminders.getLeadDescription()
+                + " до каждого занятия группы *" + userGroup + "*.\nЧтобы выключить, нажмите \"Напоминания\" ещё раз.",
+                KeyboardManager.getMainKeyboard());
+    }
+
+    private void handleSetGroup(long chatId, long userId, String groupNumber) {
         if (groupNumber.matches("\\d{4}")) {
             Config.setUserGroup(userId, groupNumber);
+            // подписка на напоминания переходит на новую группу
+            if (reminders.isSubscribed(chatId)) {
+                reminders.subscribe(chatId, groupNumber);
+            }
             sendMessageWithKeyboard(chatId, "Группа установлена: *" + groupNumber + "*",
                     KeyboardManager.getMainKeyboard());
         } else {
@@ -201,19 +466,79 @@ private void sendWelcomeMessage(long chatId, long userId) throws TelegramApiExce
         }
     }
 
-    private void requestGroupInput(long chatId) throws TelegramApiException {
+    private void requestGroupInput(long chatId) {
         SendMessage message = new SendMessage();
         message.setChatId(String.valueOf(chatId));
         message.setText("Введите номер группы (4 цифры):");
-        execute(message);
+        sender.send(message, chatId, OutboundSender.Priority.INTERACTIVE);
+    }
+
+    // В режиме встроенных кнопок расписание уходит с кнопками листания, иначе - с основной клавиатурой
+    private void sendSchedule(long chatId, GroupSchedule groupSchedule, ScheduleView view) {
+        if (!Config.isInlineUi()) {
+            sendSchedule(chatId, groupSchedule, view.render(groupSchedule));
+            return;
+        }
+        String text = view.render(groupSchedule) + ScheduleFetcher.getStaleNotice(groupSchedule);
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(chatId));
+        message.setText(text);
+        message.setParseMode("Markdown");
+        message.setReplyMarkup(view.keyboard(view.hash(text)));
+        sender.send(message, chatId, OutboundSender.Priority.INTERACTIVE);
+    }
+
+    // Нажатие встроенной кнопки правит то же сообщение; если экран не изменился, правки нет
+    private CompletableFuture<Void> handleCallback(CallbackQuery query) {
+        long chatId = query.getMessage().getChatId();
+        AnswerCallbackQuery answer = new AnswerCallbackQuery();
+        answer.setCallbackQueryId(query.getId());
+
+        String data = query.getData() != null ? query.getData() : "";
+        ScheduleView view = ScheduleView.parse(data);
+        String userGroup = Config.getUserGroup(query.getFrom().getId());
+        if (view == null || userGroup == null) {
+            answer.setText(userGroup == null ? "Сначала установите группу" : "Кнопка устарела");
+            sender.send(answer, chatId, OutboundSender.Priority.INTERACTIVE);
+            return DONE;
+        }
+
+        return fetchSchedule(userGroup).handle((groupSchedule, error) -> {
+            if (error != null) {
+                answer.setText(errorText(error));
+                sender.send(answer, chatId, OutboundSender.Priority.INTERACTIVE);
+                return null;
+            }
+            String text = view.render(groupSchedule) + ScheduleFetcher.getStaleNotice(groupSchedule);
+            sender.send(answer, chatId, OutboundSender.Priority.INTERACTIVE);
+
+            String hash = view.hash(text);
+            if (hash.equals(ScheduleView.previousHash(data))) {
+                UNCHANGED_EDITS.increment();
+                return null;
+            }
+            EditMessageText edit = new EditMessageText();
+            edit.setChatId(String.valueOf(chatId));
+            edit.setMessageId(query.getMessage().getMessageId());
+            edit.setText(text);
+            edit.setParseMode("Markdown");
+            edit.setReplyMarkup(view.keyboard(hash));
+            sender.send(edit, chatId, OutboundSender.Priority.INTERACTIVE);
+            return null;
+        });
+    }
+
+    private void sendSchedule(long chatId, GroupSchedule groupSchedule, String text) {
+        sendMessageWithKeyboard(chatId, text + ScheduleFetcher.getStaleNotice(groupSchedule),
+                KeyboardManager.getMainKeyboard());
     }
 
-    private void sendMessageWithKeyboard(long chatId, String text, ReplyKeyboardMarkup keyboard) throws TelegramApiException {
+    private void sendMessageWithKeyboard(long chatId, String text, ReplyKeyboardMarkup keyboard) {
         SendMessage message = new SendMessage();
         message.setChatId(String.valueOf(chatId));
         message.setText(text);
         message.setParseMode("Markdown");
         message.setReplyMarkup(keyboard);
-        execute(message);
+        sender.send(message, chatId, OutboundSender.Priority.INTERACTIVE);
     }
 }
\ No newline at end of file
@@ -0,0 +1,28 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+// Единственный экземпляр: все чаты свои, а сообщать об изменениях расписаний некому
+public class LocalCluster implements Cluster {
+
+    private volatile Listener listener;
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isLocal(long chatId) {
+        return true;
+    }
+
+    @Override
+    public void forward(long chatId, Update update) {
+        listener.updateReceived(update);
+    }
+
+    @Override
+    public void publishScheduleChanged(String groupNumber, int contentHash) {
+    }
+}
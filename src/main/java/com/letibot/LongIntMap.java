@@ -0,0 +1,212 @@
+package com.letibot;
+
+import java.util.concurrent.locks.StampedLock;
+
+// Отображение long -> int с открытой адресацией, без упаковки в объекты.
+// Ключи разбиты на сегменты; запись блокирует только свой сегмент,
+// чтение оптимистичное и берёт блокировку лишь при гонке с записью.
+// Один элемент стоит 12 байт на ячейку таблицы (ключ + значение) при заполнении не выше 60%,
+// т.е. ~20-40 байт на пользователя против ~100+ у HashMap<Long, String>.
+public class LongIntMap {
+
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    interface EntryConsumer {
+        void accept(long key, int value);
+    }
+
+    private static final long EMPTY_KEY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final class Table {
+        final long[] keys;
+        final int[] values;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+    }
+
+    private static final class Segment {
+        final StampedLock lock = new StampedLock();
+        volatile Table table;
+        int size;
+
+        Segment(int capacity) {
+            table = new Table(capacity);
+        }
+
+        int find(long key, long hash) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            for (int index = (int) hash & mask; ; index = (index + 1) & mask) {
+                long existing = current.keys[index];
+                if (existing == key) {
+                    return current.values[index];
+                }
+                if (existing == EMPTY_KEY) {
+                    return NO_VALUE;
+                }
+            }
+        }
+
+        // Вызывается под блокировкой записи
+        int put(long key, long hash, int value) {
+            Table current = table;
+            int mask = current.keys.length - 1;
+            int index = (int) hash & mask;
+            while (current.keys[index] != EMPTY_KEY) {
+                if (current.keys[index] == key) {
+                    int previous = current.values[index];
+                    current.values[index] = value;
+                    return previous;
+                }
+                index = (index + 1) & mask;
+            }
+
+            current.values[index] = value;
+            current.keys[index] = key;
+            if (++size > current.keys.length * LOAD_FACTOR) {
+                table = resize(current);
+            }
+            return NO_VALUE;
+        }
+
+        private static Table resize(Table old) {
+            Table resized = new Table(old.keys.length * 2);
+            int mask = resized.keys.length - 1;
+            for (int i = 0; i < old.keys.length; i++) {
+                long key = old.keys[i];
+                if (key != EMPTY_KEY) {
+                    int index = (int) mix(key) & mask;
+                    while (resized.keys[index] != EMPTY_KEY) {
+                        index = (index + 1) & mask;
+                    }
+                    resized.keys[index] = key;
+                    resized.values[index] = old.values[i];
+                }
+            }
+            return resized;
+        }
+    }
+
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final int segmentMask;
+    // ключ 0 служит маркером пустой ячейки, поэтому его значение хранится отдельно
+    private volatile int zeroKeyValue = NO_VALUE;
+
+    public LongIntMap() {
+        this(64, 1024);
+    }
+
+    public LongIntMap(int segmentCount, int initialCapacity) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1) << 1);
+        int perSegment = Integer.highestOneBit(Math.max(16, initialCapacity / count - 1) << 1);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+        this.segmentMask = count - 1;
+    }
+
+    public int get(long key) {
+        if (key == EMPTY_KEY) {
+            return zeroKeyValue;
+        }
+        long hash = mix(key);
+        Segment segment = segmentFor(hash);
+
+        StampedLock lock = segment.lock;
+        long stamp = lock.tryOptimisticRead();
+        int value = segment.find(key, hash);
+        if (lock.validate(stamp)) {
+            return value;
+        }
+
+        stamp = lock.readLock();
+        try {
+            return segment.find(key, hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Возвращает прежнее значение или NO_VALUE
+    public int put(long key, int value) {
+        if (key == EMPTY_KEY) {
+            synchronized (this) {
+                int previous = zeroKeyValue;
+                zeroKeyValue = value;
+                return previous;
+            }
+        }
+        long hash = mix(key);
+        Segment segment = segmentFor(hash);
+
+        long stamp = segment.lock.writeLock();
+        try {
+            return segment.put(key, hash, value);
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        int size = zeroKeyValue != NO_VALUE ? 1 : 0;
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    // Обход сегментов по одному; изменения, сделанные во время обхода, могут не попасть в него
+    public void forEach(EntryConsumer consumer) {
+        int zeroValue = zeroKeyValue;
+        if (zeroValue != NO_VALUE) {
+            consumer.accept(EMPTY_KEY, zeroValue);
+        }
+        for (Segment segment : segments) {
+            long stamp = segment.lock.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.keys.length; i++) {
+                    if (table.keys[i] != EMPTY_KEY) {
+                        consumer.accept(table.keys[i], table.values[i]);
+                    }
+                }
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+    }
+
+    // Объём массивов таблиц в байтах
+    public long footprintBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            bytes += (long) segment.table.keys.length * (Long.BYTES + Integer.BYTES);
+        }
+        return bytes;
+    }
+
+    private Segment segmentFor(long hash) {
+        return segments[(int) (hash >>> segmentShift) & segmentMask];
+    }
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -1,9 +1,13 @@
 package com.letibot;
 
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
 
+import java.io.IOException;
+
 public class Main {
     public static void main(String[] args) {
         String token = Config.getBotToken();
@@ -11,14 +15,127 @@ public class Main {
             System.err.println("Токен не найден, ошибка");
             System.exit(1);
         }
+        if (Config.isWebhookMode() && !WebhookServer.isSecretTokenValid(Config.getWebhookSecret())) {
+            System.err.println("Для вебхука нужен webhook.secret: 1-256 символов A-Z, a-z, 0-9, _ и -");
+            System.exit(1);
+        }
+
+        // кэш прогревается из снимка до того, как начнут приходить обновления
+        ScheduleFetcher.loadSnapshot();
+        ScheduleFetcher.startSnapshots();
 
         try {
-            TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
-            botsApi.registerBot(new LetiScheduleBot());
+            startMetrics();
+            Cluster cluster = createCluster();
+            LetiScheduleBot bot = new LetiScheduleBot(cluster);
+            startCluster(cluster, bot);
+            ScheduleFetcher.startPrefetch();
+            bot.startReminders();
+            if (Config.isWebhookMode()) {
+                startWebhook(bot, cluster);
+            } else if (Config.isClusterOnlyMode()) {
+                startClusterOnly(bot, cluster);
+            } else {
+                startPolling(bot, cluster);
+            }
             System.out.println("Бот запущен! Имя: " + Config.getBotUsername());
-        } catch (TelegramApiException e) {
+        } catch (TelegramApiException | IOException e) {
             e.printStackTrace();
             System.err.println("Ошибка при запуске бота: " + e.getMessage());
         }
     }
+
+    private static void startMetrics() throws IOException {
+        if (!Config.isMetricsEnabled()) {
+            return;
+        }
+        MetricsServer metrics = new MetricsServer(Config.getMetricsHost(), Config.getMetricsPort());
+        metrics.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(metrics::stop, "metrics-shutdown"));
+    }
+
+    private static Cluster createCluster() throws IOException {
+        if (!Config.isClusterMode()) {
+            return new LocalCluster();
+        }
+        HttpCluster cluster = new HttpCluster(Config.getClusterNode(), Config.getClusterNodes(),
+                Config.getClusterVirtualNodes(), Config.getClusterSecret(), Config.getClusterBindHost(),
+                Config.getWebhookWorkers(), Config.getWebhookMaxBodyBytes(), Config.getUserSettingsStore());
+        // группа пользователя читается и сохраняется на экземпляре-владельце его user id
+        Config.setUserSettingsStore(cluster.getUserSettings());
+        return cluster;
+    }
+
+    // Новая версия расписания, полученная здесь, сбрасывает устаревшие копии у остальных экземпляров
+    private static void startCluster(Cluster cluster, LetiScheduleBot bot) {
+        cluster.start(new Cluster.Listener() {
+            @Override
+            public void updateReceived(Update update) {
+                bot.onForwardedUpdate(update);
+            }
+
+            @Override
+            public void ownerUnavailable(Update update) {
+                bot.onOwnerUnavailable(update);
+            }
+
+            @Override
+            public void scheduleChanged(String groupNumber, int contentHash) {
+                ScheduleFetcher.expireSchedule(groupNumber, contentHash);
+            }
+        });
+        ScheduleFetcher.addScheduleListener(schedule ->
+                cluster.publishScheduleChanged(schedule.getGroupNumber(), schedule.getContentHash()));
+    }
+
+    private static void startPolling(LetiScheduleBot bot, Cluster cluster) throws TelegramApiException {
+        TelegramBotsApi botsApi = new TelegramBotsApi(DefaultBotSession.class);
+        BotSession session = botsApi.registerBot(bot);
+
+        // сначала перестаём получать обновления, затем дожидаемся уже принятых
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            session.stop();
+            cluster.close();
+            ScheduleFetcher.stopPrefetch();
+            bot.shutdown();
+            ScheduleFetcher.stopSnapshots();
+            Config.closeUserSettings();
+        }, "shutdown"));
+    }
+
+    private static void startClusterOnly(LetiScheduleBot bot, Cluster cluster) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            cluster.close();
+            ScheduleFetcher.stopPrefetch();
+            bot.shutdown();
+            ScheduleFetcher.stopSnapshots();
+            Config.closeUserSettings();
+        }, "shutdown"));
+    }
+
+    private static void startWebhook(LetiScheduleBot bot, Cluster cluster) throws TelegramApiException, IOException {
+        WebhookServer server = new WebhookServer(bot,
+                Config.getWebhookBindHost(),
+                Config.getWebhookPort(),
+                Config.getWebhookPath(),
+                Config.getWebhookSecret(),
+                Config.getWebhookWorkers(),
+                Config.getWebhookMaxBodyBytes());
+        server.start();
+
+        // без публичного адреса сервер принимает только локальные запросы (удобно для проверки)
+        String publicUrl = Config.getWebhookUrl();
+        if (!publicUrl.isEmpty()) {
+            server.register(publicUrl, Config.getWebhookWorkers());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            cluster.close();
+            ScheduleFetcher.stopPrefetch();
+            bot.shutdown();
+            ScheduleFetcher.stopSnapshots();
+            Config.closeUserSettings();
+        }, "shutdown"));
+    }
 }
\ No newline at end of file
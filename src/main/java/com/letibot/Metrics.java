@@ -0,0 +1,124 @@
+package com.letibot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+// Реестр метрик: счётчики, гистограммы и вычисляемые значения (gauge).
+// Серия определяется именем и метками; горячий путь - поиск в ConcurrentHashMap
+// и LongAdder, без блокировок. render() выдаёт текстовый формат Prometheus.
+public final class Metrics {
+
+    private static final class Family {
+        final String type;
+        final String help;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String type, String help) {
+            this.type = type;
+            this.help = help;
+        }
+    }
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private static final Map<String, Object> lookup = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    // labels - пары имя, значение
+    public static LongAdder counter(String name, String help, String... labels) {
+        return (LongAdder) series(name, "counter", help, labels, LongAdder::new);
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) series(name, "histogram", help, labels, Histogram::new);
+    }
+
+    // Счётчик, который уже ведётся в другом месте; значение читается в момент выгрузки
+    public static void counterOf(String name, String help, DoubleSupplier supplier, String... labels) {
+        series(name, "counter", help, labels, () -> supplier);
+    }
+
+    // Значение считается в момент выгрузки
+    public static void gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        series(name, "gauge", help, labels, () -> supplier);
+    }
+
+    private static Object series(String name, String type, String help, String[] labels,
+                                 Supplier<Object> factory) {
+        String labelText = formatLabels(labels);
+        String key = name + labelText;
+        Object existing = lookup.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        Family family = families.computeIfAbsent(name, n -> new Family(type, help));
+        Object created = family.series.computeIfAbsent(labelText, l -> factory.get());
+        lookup.putIfAbsent(key, created);
+        return created;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder("{");
+        for (int i = 0; i + 1 < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return result.append('}').toString();
+    }
+
+    public static String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object value = series.getValue();
+                if (value instanceof LongAdder) {
+                    out.append(name).append(labels).append(' ').append(((LongAdder) value).sum()).append('\n');
+                } else if (value instanceof DoubleSupplier) {
+                    out.append(name).append(labels).append(' ')
+                            .append(formatDouble(((DoubleSupplier) value).getAsDouble())).append('\n');
+                } else {
+                    renderHistogram(out, name, labels, (Histogram) value);
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void renderHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        long[] counts = histogram.cumulativeCounts();
+        // метка le дописывается к уже имеющимся
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        for (int i = 0; i < counts.length; i++) {
+            String bound = i < Histogram.BOUNDS.length ? formatDouble(Histogram.BOUNDS[i]) : "+Inf";
+            out.append(name).append("_bucket").append(prefix).append("le=\"").append(bound).append("\"} ")
+                    .append(counts[i]).append('\n');
+        }
+        out.append(name).append("_sum").append(labels).append(' ').append(formatDouble(histogram.sumSeconds())).append('\n');
+        out.append(name).append("_count").append(labels).append(' ').append(counts[counts.length - 1]).append('\n');
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,371 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.methods.AnswerCallbackQuery;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Асинхронная отправка сообщений в Telegram с учётом лимитов:
+// общий (~30 сообщений в секунду на бота) и на каждый чат.
+// Ответы на нажатия кнопок (INTERACTIVE) всегда уходят раньше массовых рассылок (BULK).
+// Сообщение, которому пока нельзя в свой чат, откладывается и не задерживает остальные;
+// при ответе 429 сообщение повторяется через retry_after секунд, а если лимит не групповой - на это время
+// останавливается вся отправка. После сетевой ошибки сообщение повторяется, только если запрос точно
+// не дошёл до Telegram (не удалось соединиться) или повтор безвреден (правка сообщения, ответ на кнопку):
+// после таймаута сообщение могло уже прийти, и повтор дал бы пользователю дубль.
+// Сообщения одного чата уходят строго по очереди: следующее ждёт, пока предыдущее отправлено
+// или окончательно не ушло, в том числе на время его повторов.
+public class OutboundSender {
+
+    public enum Priority {
+        INTERACTIVE,
+        BULK
+    }
+
+    interface Transport {
+        void send(BotApiMethod<? extends Serializable> method) throws TelegramApiException;
+    }
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final class Outgoing {
+        final BotApiMethod<? extends Serializable> method;
+        final long chatId;
+        final Priority priority;
+        final long enqueuedAt = System.nanoTime();
+        final long sequence;
+        long readyAt;
+        int attempts;
+
+        Outgoing(BotApiMethod<? extends Serializable> method, long chatId, Priority priority, long sequence) {
+            this.method = method;
+            this.chatId = chatId;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        // ответ на нажатие кнопки - не сообщение в чат: ни лимит, ни очередь чата на него не действуют
+        boolean isChatMessage() {
+            return !(method instanceof AnswerCallbackQuery);
+        }
+
+        // повторная отправка не меняет того, что видит пользователь
+        boolean isIdempotent() {
+            return method instanceof AnswerCallbackQuery || method instanceof EditMessageText;
+        }
+    }
+
+    private final Transport transport;
+    private final int queueCapacity;
+    private final double chatRate;
+    private final double chatBurst;
+    private final TokenBucket globalLimit;
+    private final ConcurrentHashMap<Long, TokenBucket> chatLimits = new ConcurrentHashMap<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final ArrayDeque<Outgoing> interactive = new ArrayDeque<>();
+    private final ArrayDeque<Outgoing> bulk = new ArrayDeque<>();
+    private final PriorityQueue<Outgoing> delayed = new PriorityQueue<>(
+            Comparator.<Outgoing>comparingLong(o -> o.readyAt).thenComparingLong(o -> o.sequence));
+    private final AtomicLong sequence = new AtomicLong();
+    // Чаты, у которых сообщение отправляется, ждёт лимита или повтора, и их следующие сообщения
+    private final HashMap<Long, ArrayDeque<Outgoing>> busyChats = new HashMap<>();
+    // Принятые и ещё не отправленные сообщения каждого приоритета, где бы они ни ждали
+    private final int[] pending = new int[Priority.values().length];
+
+    private final Semaphore sendSlots;
+    private final ExecutorService senders;
+    private final Thread scheduler;
+    private volatile boolean running = true;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final Histogram sendTime = Metrics.histogram("telegram_send_seconds", "Вызов Telegram Bot API");
+    private final Histogram queueTime = Metrics.histogram("telegram_delivery_seconds",
+            "От постановки в очередь до успешной отправки");
+
+    public OutboundSender(Transport transport, int threads, int queueCapacity,
+                          double globalRate, double chatRate, double chatBurst) {
+        this.transport = transport;
+        this.queueCapacity = queueCapacity;
+        this.chatRate = chatRate;
+        this.chatBurst = chatBurst;
+        this.globalLimit = new TokenBucket(globalRate, globalRate);
+        this.sendSlots = new Semaphore(threads);
+        this.senders = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "telegram-sender");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler = new Thread(this::scheduleLoop, "telegram-send-scheduler");
+        this.scheduler.setDaemon(true);
+        this.scheduler.start();
+    }
+
+    // false, если очередь заполнена и сообщение отброшено
+    public boolean send(BotApiMethod<? extends Serializable> method, long chatId, Priority priority) {
+        Outgoing outgoing = new Outgoing(method, chatId, priority, sequence.incrementAndGet());
+        lock.lock();
+        try {
+            if (!running || pending[priority.ordinal()] >= queueCapacity) {
+                dropped.increment();
+                return false;
+            }
+            pending[priority.ordinal()]++;
+            (priority == Priority.INTERACTIVE ? interactive : bulk).add(outgoing);
+            available.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            int depth = 0;
+            for (int count : pending) {
+                depth += count;
+            }
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Сколько ещё сообщений этого приоритета поместится в очередь
+    public int getRemainingCapacity(Priority priority) {
+        lock.lock();
+        try {
+            return queueCapacity - pending[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentCount() {
+        return sent.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    public long getRetriedCount() {
+        return retried.sum();
+    }
+
+    // Среднее время от постановки в очередь до успешной отправки
+    public double getAverageLatencyMillis() {
+        long count = sent.sum();
+        return count == 0 ? 0 : latencyNanos.sum() / 1_000_000d / count;
+    }
+
+    // Ждёт отправки уже поставленных сообщений, но не дольше timeoutSeconds
+    public void shutdown(long timeoutSeconds) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (getQueueDepth() > 0 && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        running = false;
+        scheduler.interrupt();
+        senders.shutdown();
+        try {
+            senders.awaitTermination(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(deadline - System.nanoTime())),
+                    TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleLoop() {
+        long lastCleanup = System.nanoTime();
+        while (running) {
+            try {
+                Outgoing next = takeNext();
+
+                if (next.isChatMessage()) {
+                    TokenBucket chatLimit = chatLimits.computeIfAbsent(next.chatId,
+                            id -> new TokenBucket(chatRate, chatBurst));
+                    long wait = chatLimit.tryAcquire();
+                    if (wait > 0) {
+                        delay(next, wait);
+                        continue;
+                    }
+                }
+
+                globalLimit.acquire();
+                sendSlots.acquire();
+                try {
+                    senders.execute(() -> deliver(next));
+                } catch (RejectedExecutionException e) {
+                    sendSlots.release();
+                    dropped.increment();
+                    finish(next);
+                }
+
+                // вёдра простаивающих чатов не нужны, иначе карта растёт бесконечно
+                if (System.nanoTime() - lastCleanup > TimeUnit.MINUTES.toNanos(1)) {
+                    chatLimits.values().removeIf(TokenBucket::isFull);
+                    lastCleanup = System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Отложенные сообщения, у которых подошло время, идут первыми, затем ответы пользователям, затем рассылки.
+    // Сообщение в чат, где предыдущее ещё не ушло, откладывается в очередь этого чата.
+    private Outgoing takeNext() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Outgoing head = delayed.peek();
+                long now = System.nanoTime();
+                if (head != null && head.readyAt <= now) {
+                    return delayed.poll();
+                }
+                Outgoing next = !interactive.isEmpty() ? interactive.poll() : bulk.poll();
+                if (next != null) {
+                    if (!next.isChatMessage()) {
+                        return next;
+                    }
+                    ArrayDeque<Outgoing> waiting = busyChats.get(next.chatId);
+                    if (waiting == null) {
+                        busyChats.put(next.chatId, new ArrayDeque<>());
+                        return next;
+                    }
+                    waiting.add(next);
+                    continue;
+                }
+                if (head == null) {
+                    available.await();
+                } else {
+                    available.awaitNanos(head.readyAt - now);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void delay(Outgoing outgoing, long nanos) {
+        lock.lock();
+        try {
+            outgoing.readyAt = System.nanoTime() + nanos;
+            delayed.add(outgoing);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Сообщение ушло или окончательно не ушло: следующее сообщение его чата встаёт в очередь первым
+    private void finish(Outgoing outgoing) {
+        lock.lock();
+        try {
+            pending[outgoing.priority.ordinal()]--;
+            if (!outgoing.isChatMessage()) {
+                return;
+            }
+            ArrayDeque<Outgoing> waiting = busyChats.get(outgoing.chatId);
+            Outgoing next = waiting == null ? null : waiting.poll();
+            if (next == null) {
+                busyChats.remove(outgoing.chatId);
+                return;
+            }
+            next.readyAt = System.nanoTime();
+            delayed.add(next);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliver(Outgoing outgoing) {
+        long started = System.nanoTime();
+        try {
+            transport.send(outgoing.method);
+            sent.increment();
+            latencyNanos.add(System.nanoTime() - outgoing.enqueuedAt);
+            queueTime.recordSince(outgoing.enqueuedAt);
+            finish(outgoing);
+        } catch (TelegramApiRequestException e) {
+            Integer retryAfter = e.getParameters() != null ? e.getParameters().getRetryAfter() : null;
+            if (retryAfter != null && !isChatScoped(outgoing)) {
+                globalLimit.pause(TimeUnit.SECONDS.toNanos(retryAfter));
+            }
+            if (retryAfter != null && ++outgoing.attempts < MAX_ATTEMPTS) {
+                retried.increment();
+                delay(outgoing, TimeUnit.SECONDS.toNanos(retryAfter));
+            } else {
+                failed.increment();
+                System.err.println("Telegram API: " + e.getMessage());
+                finish(outgoing);
+            }
+        } catch (TelegramApiException e) {
+            // сетевая ошибка - пробуем ещё раз с нарастающей паузой, если это не даст дубля
+            if ((outgoing.isIdempotent() || isNotDelivered(e)) && ++outgoing.attempts < MAX_ATTEMPTS) {
+                retried.increment();
+                delay(outgoing, TimeUnit.SECONDS.toNanos(1L << outgoing.attempts));
+            } else {
+                failed.increment();
+                System.err.println("Telegram API: " + e.getMessage());
+                finish(outgoing);
+            }
+        } catch (RuntimeException e) {
+            failed.increment();
+            System.err.println("Telegram API: " + e.getMessage());
+            finish(outgoing);
+        } finally {
+            sendTime.recordSince(started);
+            sendSlots.release();
+        }
+    }
+
+    // Лимит 20 сообщений в минуту действует на группы (отрицательный chat id) и лимитом чата у нас не покрыт;
+    // в личный чат лимит чата соблюдён, так что 429 там - общий лимит бота
+    private static boolean isChatScoped(Outgoing outgoing) {
+        return outgoing.isChatMessage() && outgoing.chatId < 0;
+    }
+
+    // Соединение не установлено - запрос до Telegram не дошёл
+    private static boolean isNotDelivered(TelegramApiException error) {
+        for (Throwable cause = error.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,180 @@
+package com.letibot;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Прогрев расписаний популярных групп перед началом занятий.
+// Почти все запросы группы приходят за ~20 минут до первой пары, поэтому за leadMinutes
+// до неё расписание обновляется заранее (со случайной задержкой, чтобы не бить в API одновременно).
+// Число одновременных обновлений и общее число запросов к API в минуту ограничены.
+// Кроме того, раз в сутки (ночью, когда бот почти не нужен) и при запуске заранее загружаются
+// все известные группы: из кэша, из статистики запросов и из preload.groups.
+public class PrefetchScheduler {
+
+    private static final long TICK_SECONDS = 60;
+
+    private final ScheduleCache cache;
+    private final long leadMinutes;
+    private final long jitterSeconds;
+    private final long minRequests;
+    private final Semaphore concurrency;
+    private final TokenBucket budget;
+    private final ConcurrentHashMap<String, LongAdder> requestCounts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LocalDate> warmedOn = new ConcurrentHashMap<>();
+    private final int preloadBatchSize;
+    private final int preloadConcurrency;
+    private final List<String> preloadGroups;
+    private final AtomicBoolean preloading = new AtomicBoolean();
+    private final ScheduledExecutorService executor;
+    private LocalDate countersDate = ScheduleFetcher.getCalendar().today().getDate();
+
+    public PrefetchScheduler(ScheduleCache cache, long leadMinutes, long jitterSeconds, long minRequests,
+                             int maxConcurrent, int budgetPerMinute,
+                             int preloadBatchSize, int preloadConcurrency, List<String> preloadGroups) {
+        this.cache = cache;
+        this.leadMinutes = leadMinutes;
+        this.jitterSeconds = jitterSeconds;
+        this.minRequests = minRequests;
+        this.concurrency = new Semaphore(maxConcurrent);
+        this.budget = new TokenBucket(budgetPerMinute / 60d, budgetPerMinute);
+        this.preloadBatchSize = preloadBatchSize;
+        this.preloadConcurrency = preloadConcurrency;
+        this.preloadGroups = preloadGroups;
+        // один поток на расписание тиков и по одному на каждое одновременное обновление
+        this.executor = Executors.newScheduledThreadPool(maxConcurrent + 1, r -> {
+            Thread thread = new Thread(r, "schedule-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        executor.scheduleAtFixedRate(this::tick, TICK_SECONDS, TICK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public void startPreload(LocalTime time, boolean onStart) {
+        if (onStart) {
+            executor.execute(this::preloadAll);
+        }
+        scheduleNightly(time);
+    }
+
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    // Следующий запуск считается каждый раз заново, чтобы время не уплывало при переходе на летнее время
+    private void scheduleNightly(LocalTime time) {
+        LocalDateTime now = ScheduleFetcher.getCalendar().now();
+        LocalDateTime next = now.toLocalDate().atTime(time);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        executor.schedule(() -> {
+            preloadAll();
+            scheduleNightly(time);
+        }, Duration.between(now, next).toSeconds(), TimeUnit.SECONDS);
+    }
+
+    // Не ждёт загрузки: пакеты уходят асинхронно, поток планировщика сразу свободен
+    public void preloadAll() {
+        if (!preloading.compareAndSet(false, true)) {
+            return;
+        }
+        Set<String> groups = new TreeSet<>(preloadGroups);
+        groups.addAll(requestCounts.keySet());
+        for (GroupSchedule schedule : cache.snapshot()) {
+            groups.add(schedule.getGroupNumber());
+        }
+        if (groups.isEmpty()) {
+            preloading.set(false);
+            return;
+        }
+
+        // соседние номера (один поток) попадают в один пакет
+        long started = System.nanoTime();
+        cache.preload(new ArrayList<>(groups), preloadBatchSize, preloadConcurrency).whenComplete((loaded, error) -> {
+            preloading.set(false);
+            if (error != null) {
+                System.err.println("Ошибка прогрева всех групп: " + error.getMessage());
+                return;
+            }
+            System.out.println("Прогрев: загружено расписаний " + loaded + " из " + groups.size() + " за "
+                    + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) + " с");
+        });
+    }
+
+    public void recordRequest(String groupNumber) {
+        requestCounts.computeIfAbsent(groupNumber, group -> new LongAdder()).increment();
+    }
+
+    private void tick() {
+        try {
+            SemesterCalendar calendar = ScheduleFetcher.getCalendar();
+            LocalDateTime now = calendar.now();
+            decayCounters(now.toLocalDate());
+
+            SemesterCalendar.Day today = calendar.today();
+            int todayIndex = today.getDayIndex();
+            WeekParity currentWeek = today.getParity();
+            LocalTime windowStart = now.toLocalTime().plusMinutes(leadMinutes);
+            LocalTime windowEnd = windowStart.plusSeconds(TICK_SECONDS);
+
+            for (Map.Entry<String, LongAdder> entry : requestCounts.entrySet()) {
+                String group = entry.getKey();
+                if (entry.getValue().sum() < minRequests || now.toLocalDate().equals(warmedOn.get(group))) {
+                    continue;
+                }
+
+                GroupSchedule schedule = cache.peek(group);
+                LocalTime firstLesson = schedule != null ? schedule.getFirstLessonStart(todayIndex, currentWeek) : null;
+                // первая пара попадает в окно [сейчас + lead, сейчас + lead + тик)
+                if (firstLesson != null && !firstLesson.isBefore(windowStart) && firstLesson.isBefore(windowEnd)) {
+                    warmedOn.put(group, now.toLocalDate());
+                    long delay = ThreadLocalRandom.current().nextLong(jitterSeconds + 1);
+                    executor.schedule(() -> prefetch(group), delay, TimeUnit.SECONDS);
+                }
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Ошибка прогрева расписаний: " + e.getMessage());
+        }
+    }
+
+    private void prefetch(String group) {
+        if (budget.tryAcquire() > 0 || !concurrency.tryAcquire()) {
+            return;
+        }
+        try {
+            cache.refresh(group);
+        } catch (IOException | ScheduleException e) {
+            System.err.println("Не удалось прогреть группу " + group + ": " + e.getMessage());
+        } finally {
+            concurrency.release();
+        }
+    }
+
+    // Раз в сутки счётчики делятся пополам, чтобы забытые группы постепенно выпадали
+    private void decayCounters(LocalDate today) {
+        if (today.equals(countersDate)) {
+            return;
+        }
+        countersDate = today;
+        requestCounts.entrySet().removeIf(entry -> {
+            long halved = entry.getValue().sumThenReset() / 2;
+            entry.getValue().add(halved);
+            return halved == 0;
+        });
+        warmedOn.values().removeIf(date -> date.isBefore(today));
+    }
+}
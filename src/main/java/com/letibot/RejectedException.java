@@ -0,0 +1,12 @@
+package com.letibot;
+
+import java.io.IOException;
+
+// Отказ без обращения к API: не повторяется и не считается ошибкой сервиса
+final class RejectedException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    RejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,390 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Напоминания "скоро занятие" для подписавшихся чатов.
+// Таймер заводится не на каждого пользователя, а на группу: в колесе лежит одна запись
+// на группу - её ближайшее занятие. При срабатывании текст собирается один раз
+// и рассылается подписчикам группы пачками через общую очередь отправки (BULK),
+// после чего заводится следующее занятие. Изменение расписания группы перестраивает только её запись.
+public class ReminderService {
+
+    private static final int MAGIC = 0x4C535231; // "LSR1"
+    private static final int MAX_GROUPS = 10000;
+    private static final long RETRY_MILLIS = 200;
+
+    private static final class Reminder {
+        final int groupId;
+        final GroupSchedule schedule;
+        final int[] indexes;
+        final LocalDateTime start;
+        final long startMillis;
+
+        Reminder(int groupId, GroupSchedule schedule, int[] indexes, LocalDateTime start) {
+            this.groupId = groupId;
+            this.schedule = schedule;
+            this.indexes = indexes;
+            this.start = start;
+            this.startMillis = start.atZone(ScheduleFetcher.getCalendar().getZone()).toInstant().toEpochMilli();
+        }
+    }
+
+    // Подписчики одной группы; объект служит и блокировкой для перестановки таймера группы
+    private static final class ChatList {
+        long[] chats = new long[4];
+        int size;
+        TimingWheel.Timeout<Reminder> timeout;
+        // таймер группы заводится или ждёт загрузки расписания
+        boolean scheduling;
+
+        void add(long chatId) {
+            if (size == chats.length) {
+                chats = Arrays.copyOf(chats, size * 2);
+            }
+            chats[size++] = chatId;
+        }
+
+        void remove(long chatId) {
+            for (int i = 0; i < size; i++) {
+                if (chats[i] == chatId) {
+                    chats[i] = chats[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final OutboundSender sender;
+    private final long leadMillis;
+    private final int batchSize;
+    private final Path file;
+    // чат -> группа, на которую он подписан
+    private final LongIntMap subscriptions = new LongIntMap();
+    private final AtomicReferenceArray<ChatList> groups = new AtomicReferenceArray<>(MAX_GROUPS);
+    private final TimingWheel<Reminder> wheel;
+    private final LongAdder fired = Metrics.counter("reminders_fired_total", "Сработавшие напоминания групп");
+    private final LongAdder late = Metrics.counter("reminder_messages_late_total",
+            "Напоминания, не отправленные до начала занятия");
+    private final ScheduledExecutorService fanOut = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "reminder-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReminderService(OutboundSender sender, long leadMinutes, int batchSize, long tickMillis, Path file) {
+        this.sender = sender;
+        this.leadMillis = TimeUnit.MINUTES.toMillis(leadMinutes);
+        this.batchSize = batchSize;
+        this.file = file;
+        // один оборот колеса - час, более дальние сроки ждут лишние обороты в своём слоте
+        this.wheel = new TimingWheel<>("reminder-wheel", tickMillis,
+                (int) (TimeUnit.HOURS.toMillis(1) / tickMillis), this::fire);
+    }
+
+    public void start() {
+        load();
+        ScheduleFetcher.addScheduleListener(this::scheduleChanged);
+        wheel.start();
+        for (int groupId = 0; groupId < MAX_GROUPS; groupId++) {
+            if (groups.get(groupId) != null) {
+                scheduleGroup(groupId);
+            }
+        }
+        fanOut.scheduleAtFixedRate(this::save, 10, 10, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        wheel.stop();
+        fanOut.shutdownNow();
+        save();
+    }
+
+    public boolean isSubscribed(long chatId) {
+        return subscriptions.get(chatId) != LongIntMap.NO_VALUE;
+    }
+
+    // Подписка на группу; повторный вызов с другой группой переносит подписку
+    public void subscribe(long chatId, String groupNumber) {
+        int groupId = GroupNumbers.toId(groupNumber);
+        int previous = subscriptions.put(chatId, groupId);
+        if (previous == groupId) {
+            return;
+        }
+        if (previous != LongIntMap.NO_VALUE) {
+            removeChat(previous, chatId);
+        }
+        if (addChat(groupId, chatId)) {
+            scheduleGroup(groupId);
+        }
+    }
+
+    public void unsubscribe(long chatId) {
+        int previous = subscriptions.put(chatId, LongIntMap.NO_VALUE);
+        if (previous != LongIntMap.NO_VALUE) {
+            removeChat(previous, chatId);
+        }
+    }
+
+    public int getSubscriberCount() {
+        int count = 0;
+        for (int groupId = 0; groupId < MAX_GROUPS; groupId++) {
+            ChatList list = groups.get(groupId);
+            if (list != null) {
+                synchronized (list) {
+                    count += list.size;
+                }
+            }
+        }
+        return count;
+    }
+
+    public String getLeadDescription() {
+        return TimeUnit.MILLISECONDS.toMinutes(leadMillis) + " мин";
+    }
+
+    // true, если таймер группы ещё не заведён и его нужно завести
+    private boolean addChat(int groupId, long chatId) {
+        ChatList list = groups.get(groupId);
+        if (list == null) {
+            groups.compareAndSet(groupId, null, new ChatList());
+            list = groups.get(groupId);
+        }
+        synchronized (list) {
+            list.add(chatId);
+            if (list.timeout != null || list.scheduling) {
+                return false;
+            }
+            list.scheduling = true;
+            return true;
+        }
+    }
+
+    private void removeChat(int groupId, long chatId) {
+        ChatList list = groups.get(groupId);
+        if (list == null) {
+            return;
+        }
+        synchronized (list) {
+            list.remove(chatId);
+            if (list.size == 0 && list.timeout != null) {
+                list.timeout.cancel();
+                list.timeout = null;
+            }
+        }
+    }
+
+    private void scheduleChanged(GroupSchedule schedule) {
+        int groupId = GroupNumbers.toId(schedule.getGroupNumber());
+        if (groups.get(groupId) != null) {
+            reschedule(groupId, schedule, ScheduleFetcher.getCalendar().now());
+        }
+    }
+
+    // Если расписания группы ещё нет в кэше, оно загружается в фоне и таймер заводится по завершении.
+    // Флаг scheduling снимается при любом исходе загрузки, иначе группа осталась бы без напоминаний
+    private void scheduleGroup(int groupId) {
+        String groupNumber = GroupNumbers.fromId(groupId);
+        GroupSchedule schedule = ScheduleFetcher.peekSchedule(groupNumber);
+        if (schedule != null) {
+            reschedule(groupId, schedule, ScheduleFetcher.getCalendar().now());
+            return;
+        }
+        ScheduleFetcher.fetchAsync(groupNumber).whenComplete((loaded, error) -> {
+            if (error == null) {
+                reschedule(groupId, loaded, ScheduleFetcher.getCalendar().now());
+                return;
+            }
+            System.err.println("Напоминания: не удалось загрузить группу " + groupNumber + ": "
+                    + ScheduleCache.unwrap(error).getMessage());
+            // следующий подписчик группы попробует ещё раз
+            ChatList list = groups.get(groupId);
+            synchronized (list) {
+                list.scheduling = false;
+            }
+        });
+    }
+
+    // Заводит таймер на первое занятие, напоминание о котором должно прийти не раньше from
+    private void reschedule(int groupId, GroupSchedule schedule, LocalDateTime from) {
+        ChatList list = groups.get(groupId);
+        synchronized (list) {
+            list.scheduling = false;
+            if (list.timeout != null) {
+                list.timeout.cancel();
+                list.timeout = null;
+            }
+            LessonTimeline timeline = schedule.getTimeline();
+            if (list.size == 0 || timeline.isEmpty()) {
+                return;
+            }
+
+            LocalDateTime lessonFrom = from.plus(leadMillis, ChronoUnit.MILLIS).truncatedTo(ChronoUnit.SECONDS);
+            int position = LessonTimeline.cyclePosition(lessonFrom.getDayOfWeek().getValue() - 1,
+                    lessonFrom.toLocalTime().toSecondOfDay(), ScheduleFetcher.weekParity(lessonFrom.toLocalDate()));
+            int first = timeline.indexAt(position);
+            LocalDateTime start = lessonFrom.plusSeconds(timeline.secondsUntil(first, position));
+
+            // занятия подгрупп в одно время - одно напоминание
+            int count = 1;
+            while (count < timeline.size()
+                    && timeline.getStart((first + count) % timeline.size()) == timeline.getStart(first)) {
+                count++;
+            }
+            int[] indexes = new int[count];
+            for (int i = 0; i < count; i++) {
+                indexes[i] = (first + i) % timeline.size();
+            }
+
+            Reminder reminder = new Reminder(groupId, schedule, indexes, start);
+            list.timeout = wheel.schedule(reminder, reminder.startMillis - leadMillis);
+        }
+    }
+
+    // Поток колеса только передаёт рассылку дальше и заводит следующее занятие
+    private void fire(Reminder reminder) {
+        ChatList list = groups.get(reminder.groupId);
+        long[] chats;
+        synchronized (list) {
+            chats = Arrays.copyOf(list.chats, list.size);
+        }
+        fired.increment();
+        String text = render(reminder);
+        try {
+            fanOut.execute(() -> deliver(reminder, text, chats, 0));
+        } catch (RejectedExecutionException e) {
+            // сервис останавливается; следующее занятие всё равно заводим, иначе группа осталась бы без напоминаний
+            System.err.println("Рассылка напоминаний группы " + GroupNumbers.fromId(reminder.groupId)
+                    + " не принята, не отправлено: " + chats.length);
+        }
+        reschedule(reminder.groupId, reminder.schedule, reminder.start.plusSeconds(1).minus(leadMillis, ChronoUnit.MILLIS));
+    }
+
+    // Пачка за пачкой, пока в очереди отправки есть место; остаток встаёт в конец очереди рассылок,
+    // чтобы большая группа не задерживала остальные
+    private void deliver(Reminder reminder, String text, long[] chats, int offset) {
+        if (System.currentTimeMillis() >= reminder.startMillis) {
+            late.add(chats.length - offset);
+            System.err.println("Напоминания группы " + GroupNumbers.fromId(reminder.groupId)
+                    + " опоздали, не отправлено: " + (chats.length - offset));
+            return;
+        }
+        if (sender.getRemainingCapacity(OutboundSender.Priority.BULK) < Math.min(batchSize, chats.length - offset)) {
+            fanOut.schedule(() -> deliver(reminder, text, chats, offset), RETRY_MILLIS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        int end = Math.min(chats.length, offset + batchSize);
+        for (int i = offset; i < end; i++) {
+            SendMessage message = new SendMessage();
+            message.setChatId(String.valueOf(chats[i]));
+            message.setText(text);
+            message.setParseMode("Markdown");
+            sender.send(message, chats[i], OutboundSender.Priority.BULK);
+        }
+        if (end < chats.length) {
+            fanOut.execute(() -> deliver(reminder, text, chats, end));
+        }
+    }
+
+    private String render(Reminder reminder) {
+        StringBuilder result = new StringBuilder();
+        result.append("*Через ").append(getLeadDescription()).append(" занятие*");
+
+        LessonTimeline timeline = reminder.schedule.getTimeline();
+        for (int index : reminder.indexes) {
+            Lesson lesson = timeline.getLesson(index);
+            result.append("\n\n*").append(lesson.getStartText());
+            if (!lesson.getEndText().isEmpty()) {
+                result.append(" - ").append(lesson.getEndText());
+            }
+            result.append("*\n ").append(lesson.getName().isEmpty() ? "Предмет не указан" : lesson.getName());
+            if (!lesson.getSubjectType().isEmpty()) {
+                result.append(" (").append(lesson.getSubjectType()).append(")");
+            }
+            if (lesson.isOnline()) {
+                result.append("\n Онлайн");
+            } else if (!lesson.getRoom().isEmpty()) {
+                result.append("\n Ауд. ").append(lesson.getRoom());
+            }
+        }
+        return result.toString();
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неизвестный формат файла " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long chatId = in.readLong();
+                int groupId = in.readUnsignedShort();
+                if (subscriptions.put(chatId, groupId) == LongIntMap.NO_VALUE) {
+                    addChat(groupId, chatId);
+                }
+            }
+            System.out.println("Загружено подписок на напоминания: " + count);
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать подписки на напоминания: " + e.getMessage());
+        }
+    }
+
+    private void save() {
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            int[] count = new int[1];
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(0);
+                IOException[] failure = new IOException[1];
+                subscriptions.forEach((chatId, groupId) -> {
+                    if (groupId == LongIntMap.NO_VALUE || failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        out.writeLong(chatId);
+                        out.writeShort(groupId);
+                        count[0]++;
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            writeCount(tmp, count[0]);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить подписки на напоминания: " + e.getMessage());
+        }
+    }
+
+    // Число записей известно только после обхода, поэтому дописывается в заголовок.
+    // Это последняя запись во временный файл: после неё файл целиком сбрасывается на диск до подмены старого
+    private static void writeCount(Path tmp, int count) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(tmp.toFile(), "rw")) {
+            raf.seek(Integer.BYTES);
+            raf.writeInt(count);
+            raf.getChannel().force(true);
+        }
+    }
+}
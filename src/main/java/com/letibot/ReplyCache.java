@@ -0,0 +1,60 @@
+package com.letibot;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Кэш готовых текстов ответов по ключу (группа, представление, чётность недели).
+// Запись считается устаревшей, если у расписания поменялся хэш содержимого.
+// Сверх maxSize вытесняется запись, к которой дольше всех не обращались: горячие группы остаются в кэше.
+public class ReplyCache {
+
+    private static final class Entry {
+        final int contentHash;
+        final String text;
+
+        Entry(int contentHash, String text) {
+            this.contentHash = contentHash;
+            this.text = text;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+    private final LongAdder hits = Metrics.counter("reply_cache_requests_total",
+            "Обращения к кэшу готовых ответов по результату", "result", "hit");
+    private final LongAdder misses = Metrics.counter("reply_cache_requests_total",
+            "Обращения к кэшу готовых ответов по результату", "result", "miss");
+    private final Histogram renderTime = Metrics.histogram("reply_render_seconds", "Формирование текста ответа");
+
+    public ReplyCache(int maxSize) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public String get(GroupSchedule schedule, String view, WeekParity parity, Supplier<String> renderer) {
+        String key = schedule.getGroupNumber() + ':' + view + ':' + parity.getCode();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && entry.contentHash == schedule.getContentHash()) {
+            hits.increment();
+            return entry.text;
+        }
+
+        misses.increment();
+        long started = System.nanoTime();
+        String text = renderer.get();
+        renderTime.recordSince(started);
+        // формируется без блокировки: одновременные промахи по одному ключу просто дадут одинаковый текст
+        synchronized (entries) {
+            entries.put(key, new Entry(schedule.getContentHash(), text));
+        }
+        return text;
+    }
+}
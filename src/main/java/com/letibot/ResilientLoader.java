@@ -0,0 +1,104 @@
+package com.letibot;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Загрузка расписания с защитой API: автомат защиты, ограничение одновременных запросов и повторы.
+// Повторяются только сетевые ошибки и ответы 5xx (IOException), с паузой 0..base*2^n (full jitter).
+// Отказ без обращения к API тоже IOException: кэш в этом случае отдаёт последнюю удачную версию.
+// Ни ожидание места, ни пауза перед повтором не занимают поток.
+class ResilientLoader implements ScheduleCache.Loader {
+
+    private final ScheduleCache.Loader delegate;
+    private final CircuitBreaker breaker;
+    private final AsyncBulkhead bulkhead;
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffMaxMillis;
+
+    private static final String REJECTED_HELP = "Запросы к API расписания, отклонённые без обращения к нему";
+    private final LongAdder rejectedOpen = Metrics.counter("etu_rejected_total", REJECTED_HELP, "reason", "open");
+    private final LongAdder rejectedBulkhead = Metrics.counter("etu_rejected_total", REJECTED_HELP, "reason", "bulkhead");
+    private final LongAdder retries = Metrics.counter("etu_retries_total", "Повторные запросы к API расписания");
+
+    ResilientLoader(ScheduleCache.Loader delegate, CircuitBreaker breaker, int maxConcurrent, int maxQueued,
+                    long bulkheadWaitMillis, int maxAttempts, long backoffBaseMillis, long backoffMaxMillis) {
+        this.delegate = delegate;
+        this.breaker = breaker;
+        this.bulkhead = new AsyncBulkhead(maxConcurrent, maxQueued, bulkheadWaitMillis);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffMaxMillis = backoffMaxMillis;
+        Metrics.gauge("etu_circuit_state", "Автомат защиты API расписания: 0 - закрыт, 1 - открыт, 2 - пробные запросы",
+                () -> breaker.getState().ordinal());
+        Metrics.gauge("etu_requests_in_flight", "Одновременные запросы к API расписания", bulkhead::getInFlight);
+    }
+
+    @Override
+    public CompletableFuture<GroupSchedule> load(String groupNumber, GroupSchedule previous) {
+        return call(() -> delegate.load(groupNumber, previous), 1, 1);
+    }
+
+    // Пакет - один вызов API: одно место в очереди, один результат для автомата защиты
+    @Override
+    public CompletableFuture<Map<String, GroupSchedule>> loadAll(List<String> groupNumbers) {
+        return call(() -> delegate.loadAll(groupNumbers), groupNumbers.size(), 1);
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> request, int groups, int attempt) {
+        return attempt(request, groups).handle((value, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Throwable cause = ScheduleCache.unwrap(error);
+            if (!(cause instanceof IOException) || cause instanceof RejectedException || attempt >= maxAttempts) {
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+            retries.increment();
+            long delay = ThreadLocalRandom.current().nextLong(
+                    Math.min(backoffMaxMillis, backoffBaseMillis << (attempt - 1)) + 1);
+            return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> call(request, groups, attempt + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    private <T> CompletableFuture<T> attempt(Supplier<CompletableFuture<T>> request, int groups) {
+        if (!breaker.tryAcquire()) {
+            rejectedOpen.increment();
+            return CompletableFuture.failedFuture(new RejectedException("API расписания временно недоступно"));
+        }
+        return bulkhead.acquire().handle((permit, error) -> {
+            if (error != null) {
+                // вызов не состоялся, но разрешение автомата нужно вернуть, иначе пробы в HALF_OPEN не закончатся
+                breaker.onIgnored();
+                rejectedBulkhead.increment();
+                return CompletableFuture.<T>failedFuture(
+                        new RejectedException("Слишком много одновременных запросов к API расписания"));
+            }
+            long started = System.nanoTime();
+            CompletableFuture<T> loading;
+            try {
+                loading = request.get();
+            } catch (RuntimeException e) {
+                loading = CompletableFuture.failedFuture(e);
+            }
+            return loading.whenComplete((value, failure) -> {
+                bulkhead.release();
+                // API ответило, просто не то, что нужно (например, группы нет): сервис жив.
+                // Медленным считаем время на одну группу: большой пакет и должен идти дольше
+                if (failure == null || ScheduleCache.unwrap(failure) instanceof ScheduleException) {
+                    breaker.onSuccess((System.nanoTime() - started) / groups);
+                } else {
+                    breaker.onFailure();
+                }
+            });
+        }).thenCompose(Function.identity());
+    }
+}
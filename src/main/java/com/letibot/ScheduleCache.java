@@ -0,0 +1,363 @@
+package com.letibot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Кэш расписаний по номеру группы.
+// Свежие записи (моложе ttl) отдаются сразу, устаревшие (моложе ttl + stale) тоже отдаются,
+// но при этом запускается фоновое обновление. Одновременные промахи по одной группе
+// схлопываются в один запрос к API. Если API недоступно, отдаётся последняя удачная версия любого возраста.
+// Загрузка асинхронная: ни промах, ни фоновое обновление не занимают поток на время запроса.
+public class ScheduleCache {
+
+    interface Loader {
+        // previous - текущая версия из кэша (или null), по ней можно сделать условный запрос.
+        // Не блокирует: ошибки (IOException, ScheduleException) приходят через возвращённое будущее
+        CompletableFuture<GroupSchedule> load(String groupNumber, GroupSchedule previous);
+
+        // Несколько групп одним запросом, без условных заголовков. Групп, которых нет в ответе, нет в результате
+        CompletableFuture<Map<String, GroupSchedule>> loadAll(List<String> groupNumbers);
+    }
+
+    interface Listener {
+        // вызывается в потоке, завершившем загрузку, когда содержимое расписания группы изменилось
+        void scheduleChanged(GroupSchedule schedule);
+    }
+
+    private static final class Entry {
+        final GroupSchedule value;
+        final long loadedAt;
+
+        Entry(GroupSchedule value) {
+            this(value, value.getFetchedAt());
+        }
+
+        Entry(GroupSchedule value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final Loader loader;
+    private final long ttlMillis;
+    private final long staleMillis;
+    private final Map<String, Entry> entries;
+    private final ConcurrentHashMap<String, CompletableFuture<GroupSchedule>> inFlight = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // API отвергло пакет или не вернуло из него ни одной группы: списков номеров оно не понимает,
+    // и дальше прогрев идёт по группе за запрос
+    private volatile boolean batchesUnsupported;
+
+    private static final String REQUESTS_HELP = "Обращения к кэшу расписаний по результату";
+    private final LongAdder freshHits = Metrics.counter("schedule_cache_requests_total", REQUESTS_HELP, "result", "fresh");
+    private final LongAdder staleHits = Metrics.counter("schedule_cache_requests_total", REQUESTS_HELP, "result", "stale");
+    private final LongAdder misses = Metrics.counter("schedule_cache_requests_total", REQUESTS_HELP, "result", "miss");
+    private final LongAdder fallbacks = Metrics.counter("schedule_cache_requests_total", REQUESTS_HELP, "result", "fallback");
+
+    private static final String PRELOAD_HELP = "Группы, загруженные заранее при прогреве всего кэша";
+    private final LongAdder preloaded = Metrics.counter("schedule_preload_groups_total", PRELOAD_HELP, "result", "loaded");
+    private final LongAdder preloadFailed = Metrics.counter("schedule_preload_groups_total", PRELOAD_HELP, "result", "failed");
+
+    public ScheduleCache(Loader loader, long ttlSeconds, long staleSeconds, int maxSize) {
+        this.loader = loader;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.staleMillis = TimeUnit.SECONDS.toMillis(staleSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public GroupSchedule get(String groupNumber) throws IOException, ScheduleException {
+        return await(getAsync(groupNumber));
+    }
+
+    // Каждый вызывающий получает своё будущее: его отмена или таймаут не прерывают загрузку для остальных
+    public CompletableFuture<GroupSchedule> getAsync(String groupNumber) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(groupNumber);
+        }
+
+        if (entry != null) {
+            long age = System.currentTimeMillis() - entry.loadedAt;
+            if (age < ttlMillis) {
+                freshHits.increment();
+                return CompletableFuture.completedFuture(entry.value);
+            }
+            if (age < ttlMillis + staleMillis) {
+                staleHits.increment();
+                // обновление идёт в фоне: load() не ждёт ответа API
+                load(groupNumber);
+                return CompletableFuture.completedFuture(entry.value);
+            }
+        }
+
+        misses.increment();
+        if (entry == null) {
+            return load(groupNumber).copy();
+        }
+        return load(groupNumber).handle((value, error) -> {
+            if (error == null) {
+                return value;
+            }
+            fallbacks.increment();
+            return entry.value;
+        });
+    }
+
+    // Запись из кэша без загрузки и без учёта возраста
+    public GroupSchedule peek(String groupNumber) {
+        synchronized (entries) {
+            Entry entry = entries.get(groupNumber);
+            return entry != null ? entry.value : null;
+        }
+    }
+
+    // Принудительная загрузка; при уже идущей загрузке просто дожидается её
+    public GroupSchedule refresh(String groupNumber) throws IOException, ScheduleException {
+        return await(load(groupNumber));
+    }
+
+    // Загружает все группы: по batchSize за запрос, не больше concurrency запросов одновременно.
+    // При batchSize 1 запросы обычные (условные, с ETag), просто идут подряд по нескольким соединениям.
+    // Пакет дешевле по числу запросов, но его ответ всегда полный: у ответа один ETag на все группы,
+    // и изменившаяся группа из пакета остаётся без валидаторов - её следующее обновление тоже полное.
+    // Группы, которые уже загружаются, не запрашиваются повторно. Результат - число загруженных групп
+    public CompletableFuture<Integer> preload(List<String> groupNumbers, int batchSize, int concurrency) {
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < groupNumbers.size(); from += batchSize) {
+            batches.add(groupNumbers.subList(from, Math.min(groupNumbers.size(), from + batchSize)));
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger loaded = new AtomicInteger();
+        List<CompletableFuture<Void>> workers = new ArrayList<>();
+        for (int i = 0; i < Math.min(concurrency, batches.size()); i++) {
+            workers.add(preloadNext(batches, next, loaded));
+        }
+        return CompletableFuture.allOf(workers.toArray(CompletableFuture<?>[]::new)).thenApply(ignored -> loaded.get());
+    }
+
+    // Следующий пакет уходит, когда закончился предыдущий: в API одновременно не больше concurrency запросов
+    private CompletableFuture<Void> preloadNext(List<List<String>> batches, AtomicInteger next, AtomicInteger loaded) {
+        int index = next.getAndIncrement();
+        if (index >= batches.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<String> batch = batches.get(index);
+        List<CompletableFuture<GroupSchedule>> loads;
+        if (batch.size() == 1 || batchesUnsupported) {
+            loads = new ArrayList<>(batch.size());
+            for (String groupNumber : batch) {
+                loads.add(load(groupNumber));
+            }
+        } else {
+            loads = loadBatch(batch);
+        }
+        CompletableFuture<?>[] counted = new CompletableFuture<?>[loads.size()];
+        for (int i = 0; i < loads.size(); i++) {
+            counted[i] = loads.get(i).handle((value, error) -> {
+                if (error == null) {
+                    preloaded.increment();
+                    loaded.incrementAndGet();
+                } else {
+                    preloadFailed.increment();
+                }
+                return null;
+            });
+        }
+        // отказы автомата защиты приходят сразу: без Async цепочка из тысяч пакетов шла бы одним стеком
+        return CompletableFuture.allOf(counted).thenComposeAsync(ignored -> preloadNext(batches, next, loaded));
+    }
+
+    public List<GroupSchedule> snapshot() {
+        synchronized (entries) {
+            List<GroupSchedule> values = new ArrayList<>(entries.size());
+            for (Entry entry : entries.values()) {
+                values.add(entry.value);
+            }
+            return values;
+        }
+    }
+
+    // Заполняет кэш сохранёнными расписаниями; более свежие записи не перезаписываются
+    public void restore(List<GroupSchedule> schedules) {
+        synchronized (entries) {
+            for (GroupSchedule schedule : schedules) {
+                Entry existing = entries.get(schedule.getGroupNumber());
+                if (existing == null || existing.loadedAt < schedule.getFetchedAt()) {
+                    entries.put(schedule.getGroupNumber(), new Entry(schedule));
+                }
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void invalidate(String groupNumber) {
+        synchronized (entries) {
+            entries.remove(groupNumber);
+        }
+    }
+
+    // Где-то уже есть версия с содержимым contentHash: если наша другая, следующее обращение загрузит новую.
+    // Старая запись остаётся запасной на случай недоступности API
+    public void expire(String groupNumber, int contentHash) {
+        synchronized (entries) {
+            Entry entry = entries.get(groupNumber);
+            if (entry != null && entry.value.getContentHash() != contentHash) {
+                entries.put(groupNumber, new Entry(entry.value, 0));
+            }
+        }
+    }
+
+    // Первый пришедший запускает загрузку, остальные получают то же будущее
+    private CompletableFuture<GroupSchedule> load(String groupNumber) {
+        CompletableFuture<GroupSchedule> created = new CompletableFuture<>();
+        CompletableFuture<GroupSchedule> existing = inFlight.putIfAbsent(groupNumber, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        loadAlone(groupNumber, created, peek(groupNumber));
+        return created;
+    }
+
+    // Обычный условный запрос одной группы; created уже записано в inFlight
+    private void loadAlone(String groupNumber, CompletableFuture<GroupSchedule> created, GroupSchedule previous) {
+        CompletableFuture<GroupSchedule> loading;
+        try {
+            loading = loader.load(groupNumber, previous);
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((value, error) -> complete(groupNumber, created, previous, value, error));
+    }
+
+    // Одним запросом загружаются только группы, которые ещё никто не загружает; остальные ждут уже идущей загрузки.
+    // Пока пакет в пути, промахи по его группам ждут его же, а не идут в API отдельно
+    private List<CompletableFuture<GroupSchedule>> loadBatch(List<String> groupNumbers) {
+        List<CompletableFuture<GroupSchedule>> results = new ArrayList<>(groupNumbers.size());
+        Map<String, CompletableFuture<GroupSchedule>> owned = new LinkedHashMap<>();
+        for (String groupNumber : groupNumbers) {
+            CompletableFuture<GroupSchedule> created = new CompletableFuture<>();
+            CompletableFuture<GroupSchedule> existing = inFlight.putIfAbsent(groupNumber, created);
+            if (existing != null) {
+                results.add(existing);
+            } else {
+                owned.put(groupNumber, created);
+                results.add(created);
+            }
+        }
+        if (owned.isEmpty()) {
+            return results;
+        }
+
+        Map<String, GroupSchedule> previous = new HashMap<>();
+        for (String groupNumber : owned.keySet()) {
+            previous.put(groupNumber, peek(groupNumber));
+        }
+        CompletableFuture<Map<String, GroupSchedule>> loading;
+        try {
+            loading = loader.loadAll(new ArrayList<>(owned.keySet()));
+        } catch (RuntimeException e) {
+            loading = CompletableFuture.failedFuture(e);
+        }
+        loading.whenComplete((values, error) -> {
+            // сетевой сбой - не повод отказываться от пакетов, а ответ с ошибкой или без единой группы - да
+            boolean rejected = error != null ? unwrap(error) instanceof ScheduleException : values.isEmpty();
+            if (rejected && !batchesUnsupported) {
+                batchesUnsupported = true;
+                System.err.println("API расписания не вернуло группы по списку номеров, "
+                        + "дальше группы загружаются по одной");
+            }
+            for (Map.Entry<String, CompletableFuture<GroupSchedule>> group : owned.entrySet()) {
+                String groupNumber = group.getKey();
+                GroupSchedule old = previous.get(groupNumber);
+                GroupSchedule value = error == null ? values.get(groupNumber) : null;
+                if (error != null && !rejected) {
+                    complete(groupNumber, group.getValue(), old, null, error);
+                } else if (value == null) {
+                    // группы нет в пакете: отдельный запрос загрузит её или сообщит, что её нет
+                    loadAlone(groupNumber, group.getValue(), old);
+                } else if (old != null && old.getContentHash() == value.getContentHash() && old.equals(value)) {
+                    // пакетный ответ без валидаторов: неизменившееся расписание остаётся прежним экземпляром
+                    complete(groupNumber, group.getValue(), old,
+                            old.withValidators(value.getFetchedAt(), old.getEtag(), old.getLastModified(),
+                                    old.getBodyHash()), null);
+                } else {
+                    complete(groupNumber, group.getValue(), old, value, null);
+                }
+            }
+        });
+        return results;
+    }
+
+    private void complete(String groupNumber, CompletableFuture<GroupSchedule> created, GroupSchedule previous,
+                          GroupSchedule value, Throwable error) {
+        if (error == null) {
+            synchronized (entries) {
+                entries.put(groupNumber, new Entry(value));
+            }
+        }
+        inFlight.remove(groupNumber, created);
+        if (error != null) {
+            created.completeExceptionally(unwrap(error));
+            return;
+        }
+        created.complete(value);
+        if (previous == null || !previous.equals(value)) {
+            notifyChanged(value);
+        }
+    }
+
+    private void notifyChanged(GroupSchedule schedule) {
+        for (Listener listener : listeners) {
+            try {
+                listener.scheduleChanged(schedule);
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка обработчика изменения расписания: " + e.getMessage());
+            }
+        }
+    }
+
+    private static GroupSchedule await(CompletableFuture<GroupSchedule> future) throws IOException, ScheduleException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Загрузка расписания прервана", e);
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof ScheduleException) {
+                throw (ScheduleException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Исходная ошибка без обёрток, которые добавляют зависимые будущие
+    static Throwable unwrap(Throwable error) {
+        while (error instanceof CompletionException && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+}
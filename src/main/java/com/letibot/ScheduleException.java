@@ -0,0 +1,9 @@
+package com.letibot;
+
+class ScheduleException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public ScheduleException(String message) {
+        super(message);
+    }
+}
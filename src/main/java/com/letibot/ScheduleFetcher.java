@@ -1,371 +1,623 @@
 package com.letibot;
 
-import com.google.gson.*;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-import org.apache.http.HttpResponse;
-
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.*;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-
-import java.time.DateTimeException;
-import java.time.format.TextStyle;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.GZIPInputStream;
+
+import java.time.format.DateTimeFormatter;
 
 public class ScheduleFetcher {
 
-    public static String getScheduleForGroup(String groupId) throws IOException, ScheduleException {
-        String url = String.format(
-                "https://digital.etu.ru/api/mobile/schedule?groupNumber=%s&season=autumn&year=2025&joinWeeks=true&withURL=true",
-                groupId
-        );
+    // объявлен первым: к нему обращаются при создании остальных полей
+    private static final SemesterCalendar calendar = new SemesterCalendar(
+            Clock.system(Config.getSemesterZone()),
+            Config.getAutumnSemesterStart(),
+            Config.getSpringSemesterStart(),
+            Config.getSemesterStart()
+    );
+
+    // Ответы API принимает небольшой пул клиента, разбор идёт в отдельном пуле:
+    // поток не занят, пока запрос в пути, и долгий разбор не задерживает приём других ответов
+    private static final ExecutorService httpExecutor = createExecutor("etu-http", Config.getEtuHttpThreads());
+    private static final ExecutorService parseExecutor = createExecutor("schedule-parse", Config.getScheduleParseThreads());
+    private static final HttpClient httpClient = createHttpClient();
+
+    private static final CircuitBreaker breaker = new CircuitBreaker(
+            "API расписания",
+            Config.getEtuBreakerWindow(),
+            Config.getEtuBreakerMinCalls(),
+            Config.getEtuBreakerFailurePercent(),
+            Config.getEtuBreakerSlowMillis(),
+            Config.getEtuBreakerSlowPercent(),
+            TimeUnit.SECONDS.toMillis(Config.getEtuBreakerOpenSeconds()),
+            Config.getEtuBreakerHalfOpenCalls()
+    );
+
+    private static final ScheduleCache cache = new ScheduleCache(
+            new ResilientLoader(
+                    new ScheduleCache.Loader() {
+                        @Override
+                        public CompletableFuture<GroupSchedule> load(String groupNumber, GroupSchedule previous) {
+                            return loadScheduleForGroup(groupNumber, previous);
+                        }
 
-        return fetchJsonFromUrl(url);
+                        @Override
+                        public CompletableFuture<Map<String, GroupSchedule>> loadAll(List<String> groupNumbers) {
+                            return loadSchedulesForGroups(groupNumbers);
+                        }
+                    },
+                    breaker,
+                    Config.getEtuBulkheadMax(),
+                    Config.getEtuBulkheadQueue(),
+                    Config.getEtuBulkheadWaitMillis(),
+                    Config.getEtuRetryAttempts(),
+                    Config.getEtuRetryBaseMillis(),
+                    Config.getEtuRetryMaxMillis()
+            ),
+            Config.getScheduleCacheTtlSeconds(),
+            Config.getScheduleCacheStaleSeconds(),
+            Config.getScheduleCacheMaxSize()
+    );
+
+    private static final ReplyCache replies = new ReplyCache(Config.getReplyCacheMaxSize());
+
+    private static final PrefetchScheduler prefetcher = new PrefetchScheduler(
+            cache,
+            Config.getPrefetchLeadMinutes(),
+            Config.getPrefetchJitterSeconds(),
+            Config.getPrefetchMinRequests(),
+            Config.getPrefetchConcurrency(),
+            Config.getPrefetchBudgetPerMinute(),
+            Config.getEtuBatchSize(),
+            Config.getPreloadConcurrency(),
+            Config.getPreloadGroups()
+    );
+
+    private static final ScheduledExecutorService snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "schedule-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final DateTimeFormatter DATA_TIME_FORMAT = DateTimeFormatter.ofPattern("dd.MM HH:mm");
+
+    private static final Histogram FETCH_TIME = Metrics.histogram("etu_fetch_seconds",
+            "Запрос к API расписания от отправки до конца разбора");
+    private static final Histogram PARSE_TIME = Metrics.histogram("schedule_parse_seconds",
+            "Распаковка и разбор полученного ответа API");
+    private static final LongAdder PARSE_SKIPPED = Metrics.counter("schedule_parse_skipped_total",
+            "Ответы API с тем же телом, что у расписания в кэше: разбор не нужен");
+
+    public static GroupSchedule getScheduleForGroup(String groupId) throws IOException, ScheduleException {
+        prefetcher.recordRequest(groupId);
+        return cache.get(groupId);
     }
 
-    private static String fetchJsonFromUrl(String url) throws IOException, ScheduleException {
-        try (CloseableHttpClient client = HttpClients.createDefault()) {
-            HttpGet request = new HttpGet(url);
-            HttpResponse response = client.execute(request);
+    // То же без блокировки. Ошибки - IOException или ScheduleException внутри будущего.
+    // Отмена или orTimeout отвязывают только этого вызывающего: загрузка доводится до конца и попадает в кэш
+    public static CompletableFuture<GroupSchedule> fetchAsync(String groupId) {
+        prefetcher.recordRequest(groupId);
+        return cache.getAsync(groupId);
+    }
 
-            if (response.getStatusLine().getStatusCode() != 200) {
-                throw new ScheduleException("API вернуло ошибку: " + response.getStatusLine().getStatusCode());
-            }
+    static SemesterCalendar getCalendar() {
+        return calendar;
+    }
 
-            return EntityUtils.toString(response.getEntity(), "UTF-8");
-        }
+    // Расписание из кэша без обращения к API, null если его там нет
+    public static GroupSchedule peekSchedule(String groupId) {
+        return cache.peek(groupId);
     }
 
-    public static String getCurrentWeekParity() {
-        LocalDate startOfSemester = LocalDate.of(2025, 9, 2);
-        long weeksSinceStart = ChronoUnit.WEEKS.between(startOfSemester, LocalDate.now());
-        boolean isOddWeek = weeksSinceStart % 2 == 0;
-        return isOddWeek ? "нечётная" : "чётная";
+    static void addScheduleListener(ScheduleCache.Listener listener) {
+        cache.addListener(listener);
     }
 
-    public static String getCurrentWeekInfo() {
-        return "*Текущая неделя:* " + getCurrentWeekParity();
+    // Другой экземпляр бота получил новую версию расписания группы
+    static void expireSchedule(String groupId, int contentHash) {
+        cache.expire(groupId, contentHash);
     }
 
-    public static String parseScheduleForDay(String json, String day, String groupNumber) throws ScheduleException {
+    // Загружает сохранённые расписания в кэш; вызывается до регистрации бота
+    public static void loadSnapshot() {
+        long started = System.nanoTime();
         try {
-            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+            List<GroupSchedule> schedules = ScheduleSnapshot.load(Config.getScheduleSnapshotFile());
+            cache.restore(schedules);
+            System.out.println("Загружено расписаний из снимка: " + schedules.size() + " за "
+                    + (System.nanoTime() - started) / 1_000_000 + " мс");
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать снимок расписаний: " + e.getMessage());
+        }
+    }
 
-            if (!root.has(groupNumber)) {
-                throw new ScheduleException("Группа не найдена");
-            }
+    public static void saveSnapshot() {
+        try {
+            ScheduleSnapshot.save(Config.getScheduleSnapshotFile(), cache.snapshot());
+        } catch (IOException e) {
+            System.err.println("Не удалось сохранить снимок расписаний: " + e.getMessage());
+        }
+    }
 
-            JsonObject groupData = root.getAsJsonObject(groupNumber);
-            JsonObject days = groupData.getAsJsonObject("days");
-            int dayIndex = getDayIndex(day);
+    public static void startSnapshots() {
+        long interval = Config.getScheduleSnapshotIntervalMinutes();
+        snapshotExecutor.scheduleAtFixedRate(ScheduleFetcher::saveSnapshot, interval, interval, TimeUnit.MINUTES);
+    }
 
-            if (dayIndex == -1) {
-                throw new ScheduleException("Неверный день недели");
-            }
+    public static void stopSnapshots() {
+        snapshotExecutor.shutdownNow();
+        saveSnapshot();
+    }
 
-            String dayKey = String.valueOf(dayIndex);
-            if (!days.has(dayKey)) {
-                return "В этот день занятий нет.";
-            }
+    // Пометка для расписания, которое старше допустимого: значит, обновить его не удалось
+    public static String getStaleNotice(GroupSchedule schedule) {
+        long maxAge = TimeUnit.SECONDS.toMillis(Config.getScheduleCacheTtlSeconds() + Config.getScheduleCacheStaleSeconds());
+        if (System.currentTimeMillis() - schedule.getFetchedAt() < maxAge) {
+            return "";
+        }
+        String time = Instant.ofEpochMilli(schedule.getFetchedAt()).atZone(calendar.getZone()).format(DATA_TIME_FORMAT);
+        return "\n\n_Сервер расписания недоступен, данные на " + time + "_";
+    }
 
-            JsonObject dayObject = days.getAsJsonObject(dayKey);
-            if (!dayObject.has("lessons") || dayObject.get("lessons").isJsonNull()) {
-                return "В этот день занятий нет.";
-            }
+    public static void startPrefetch() {
+        if (Config.isPrefetchEnabled()) {
+            prefetcher.start();
+        }
+        if (Config.isPreloadEnabled()) {
+            prefetcher.startPreload(Config.getPreloadTime(), Config.isPreloadOnStart());
+        }
+    }
 
-            JsonArray lessons = dayObject.getAsJsonArray("lessons");
-            if (lessons.size() == 0) {
-                return "В этот день занятий нет.";
-            }
+    public static void stopPrefetch() {
+        prefetcher.stop();
+    }
 
-            List<JsonObject> lessonList = new ArrayList<>();
-            for (JsonElement lesson : lessons) {
-                lessonList.add(lesson.getAsJsonObject());
-            }
+    private static CompletableFuture<GroupSchedule> loadScheduleForGroup(String groupId, GroupSchedule previous) {
+        SemesterCalendar.Day today = calendar.today();
+        String url = String.format(
+                "%s?groupNumber=%s&season=%s&year=%d&joinWeeks=true&withURL=true",
+                Config.getEtuApiUrl(), groupId, today.getSeason(), today.getYear()
+        );
 
-            lessonList.sort((a, b) -> {
-                String timeA = getSafeString(a, "start_time", "00:00");
-                String timeB = getSafeString(b, "start_time", "00:00");
-                return timeA.compareTo(timeB);
-            });
-
-            StringBuilder result = new StringBuilder();
-            String dayName = dayObject.has("name") ?
-                    dayObject.get("name").getAsString() : getRussianDayName(dayIndex);
-
-            result.append(getCurrentWeekInfo()).append("\n");
-            result.append("*").append(dayName).append("*\n\n");
-
-            for (JsonObject lesson : lessonList) {
-                String startTime = getSafeString(lesson, "start_time", "??:??");
-                String endTime = getSafeString(lesson, "end_time", "??:??");
-                String subject = getSafeString(lesson, "name", "Предмет не указан");
-                String type = getSafeString(lesson, "subjectType", "");
-                String teacher = getSafeString(lesson, "teacher", "");
-                String room = getSafeString(lesson, "room", "");
-                String form = getSafeString(lesson, "form", "");
-                String weekType = getSafeString(lesson, "week", "");
-
-                String weekInfo = "";
-                if (!weekType.isEmpty() && !weekType.equals("null")) {
-                    weekInfo = getWeekTypeInfo(weekType);
-                }
+        return fetchScheduleFromUrl(url, groupId, previous);
+    }
 
-                result.append("*").append(startTime).append(" - ").append(endTime);
-                if (!weekInfo.isEmpty()) {
-                    result.append(" ").append(weekInfo);
-                }
-                result.append("*\n");
+    // Номера групп через запятую (поддержка списка в API не подтверждена, см. etu.batch.size);
+    // корень ответа - те же номера, поэтому он разбирается как обычно
+    private static CompletableFuture<Map<String, GroupSchedule>> loadSchedulesForGroups(List<String> groupIds) {
+        SemesterCalendar.Day today = calendar.today();
+        String url = String.format(
+                "%s?groupNumber=%s&season=%s&year=%d&joinWeeks=true&withURL=true",
+                Config.getEtuApiUrl(), String.join(",", groupIds), today.getSeason(), today.getYear()
+        );
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(Config.getHttpSocketTimeoutMillis()))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        long started = System.nanoTime();
+        return send(request, response -> readSchedules(response, groupIds, started));
+    }
 
-                result.append(" ").append(subject);
-                if (!type.isEmpty()) {
-                    result.append(" (").append(type).append(")");
-                }
-                result.append("\n");
+    private static ExecutorService createExecutor(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
 
-                if (!teacher.isEmpty() && !teacher.equals("null")) {
-                    result.append(" ").append(teacher).append("\n");
-                }
+    // Один клиент на всё приложение: соединения с digital.etu.ru переиспользуются из пула.
+    // Лимита на маршрут у клиента JDK нет: по HTTP/1.1 каждый запрос в пути занимает своё соединение,
+    // а все запросы к API идут через ResilientLoader, поэтому открытых соединений не больше etu.bulkhead.max.
+    // Размер пула и время простоя клиент JDK берёт только из системных свойств, прочитанных при первом
+    // создании любого HttpClient в процессе; простаивающее дольше http.keepalive.seconds соединение закрывается
+    private static HttpClient createHttpClient() {
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(Config.getHttpKeepAliveSeconds()));
+        }
+        if (System.getProperty("jdk.httpclient.connectionPoolSize") == null) {
+            System.setProperty("jdk.httpclient.connectionPoolSize", String.valueOf(Config.getHttpMaxConnections()));
+        }
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(Config.getHttpConnectTimeoutMillis()))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(httpExecutor)
+                .build();
+    }
 
-                if ("online".equalsIgnoreCase(form) || "distant".equalsIgnoreCase(form)) {
-                    result.append(" Онлайн");
-                } else if (!room.isEmpty() && !room.equals("null")) {
-                    result.append(" Ауд. ").append(room);
-                }
+    // Если есть предыдущая версия, запрос условный: 304 означает, что расписание не менялось.
+    // Повторы здесь не делаются, их делает ResilientLoader
+    private static CompletableFuture<GroupSchedule> fetchScheduleFromUrl(String url, String groupId,
+                                                                         GroupSchedule previous) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofMillis(Config.getHttpSocketTimeoutMillis()))
+                // клиент JDK сам не сжимает: просим gzip и распаковываем при разборе
+                .header("Accept-Encoding", "gzip")
+                .GET();
+        if (previous != null && previous.getEtag() != null) {
+            request.header("If-None-Match", previous.getEtag());
+        }
+        if (previous != null && previous.getLastModified() != null) {
+            request.header("If-Modified-Since", previous.getLastModified());
+        }
+
+        long started = System.nanoTime();
+        return send(request.build(), response -> readSchedule(response, groupId, previous, started));
+    }
+
+    private interface ResponseReader<T> {
+        T read(HttpResponse<InputStream> response) throws IOException, ScheduleException;
+    }
+
+    // Будущее завершается с заголовками, тело разбирается потоком в пуле разбора по мере прихода,
+    // целиком в память не копируется. Ошибки сети и разбора приходят в будущем как есть
+    private static <T> CompletableFuture<T> send(HttpRequest request, ResponseReader<T> reader) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .handleAsync((response, error) -> {
+                    try {
+                        if (error != null) {
+                            Throwable cause = ScheduleCache.unwrap(error);
+                            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                        }
+                        // тело закрывается при любом исходе, иначе соединение не вернётся в пул
+                        try {
+                            return reader.read(response);
+                        } finally {
+                            response.body().close();
+                        }
+                    } catch (ServerErrorException e) {
+                        throw new CompletionException(e);
+                    } catch (IOException e) {
+                        Metrics.counter("etu_responses_total", "Ответы API расписания по коду", "status", "error")
+                                .increment();
+                        throw new CompletionException(e);
+                    } catch (ScheduleException e) {
+                        throw new CompletionException(e);
+                    }
+                }, parseExecutor);
+    }
 
-                result.append("\n\n");
+    private static GroupSchedule readSchedule(HttpResponse<InputStream> response, String groupId, GroupSchedule previous,
+                                              long started) throws IOException, ScheduleException {
+        int status = response.statusCode();
+        Metrics.counter("etu_responses_total", "Ответы API расписания по коду", "status", String.valueOf(status))
+                .increment();
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+
+        if (status == 304 && previous != null) {
+            FETCH_TIME.recordSince(started);
+            return previous.withValidators(System.currentTimeMillis(),
+                    etag != null ? etag : previous.getEtag(),
+                    lastModified != null ? lastModified : previous.getLastModified(),
+                    previous.getBodyHash());
+        }
+        checkStatus(status);
+
+        // Сервер без ETag и Last-Modified всегда отвечает 200 с полным телом.
+        // Тело с тем же хэшем, что у расписания в кэше, не разбирается: чтобы сравнить хэш до разбора,
+        // такое тело читается целиком. Без хэша для сравнения (первая загрузка, снимок после рестарта)
+        // тело разбирается потоком, а хэш считается по пути
+        long parseStarted = System.nanoTime();
+        GroupSchedule schedule;
+        long bodyHash;
+        CRC32C high = new CRC32C();
+        CRC32 low = new CRC32();
+        try (InputStream body = new CheckedInputStream(new CheckedInputStream(openBody(response), high), low)) {
+            if (previous != null && previous.getBodyHash() != 0) {
+                byte[] bytes = body.readAllBytes();
+                bodyHash = bodyHash(high, low);
+                if (previous.getBodyHash() == bodyHash) {
+                    PARSE_SKIPPED.increment();
+                    return previous.withValidators(System.currentTimeMillis(), etag, lastModified, bodyHash);
+                }
+                try (Reader reader = new InputStreamReader(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8)) {
+                    schedule = ScheduleParser.parse(reader, groupId);
+                }
+            } else {
+                schedule = ScheduleParser.parse(new InputStreamReader(body, StandardCharsets.UTF_8), groupId);
+                // разбор останавливается на конце JSON: дочитываем хвост, чтобы хэш покрыл всё тело
+                body.transferTo(OutputStream.nullOutputStream());
+                bodyHash = bodyHash(high, low);
             }
+        } finally {
+            PARSE_TIME.recordSince(parseStarted);
+            FETCH_TIME.recordSince(started);
+        }
+
+        // тело другое, а содержимое то же (например, сменился порядок полей): оставляем прежний экземпляр
+        if (previous != null && previous.getContentHash() == schedule.getContentHash() && previous.equals(schedule)) {
+            schedule = previous;
+        }
+        return schedule.withValidators(System.currentTimeMillis(), etag, lastModified, bodyHash);
+    }
 
-            return result.toString();
+    // 64 бита из двух разных CRC: случайное совпадение при изменившемся теле практически исключено
+    private static long bodyHash(CRC32C high, CRC32 low) {
+        return high.getValue() << 32 | low.getValue();
+    }
 
-        } catch (JsonSyntaxException e) {
-            throw new ScheduleException("Ошибка формата данных");
+    private static Map<String, GroupSchedule> readSchedules(HttpResponse<InputStream> response, List<String> groupIds,
+                                                            long started) throws IOException, ScheduleException {
+        int status = response.statusCode();
+        Metrics.counter("etu_responses_total", "Ответы API расписания по коду", "status", String.valueOf(status))
+                .increment();
+        checkStatus(status);
+
+        long parseStarted = System.nanoTime();
+        Map<String, GroupSchedule> schedules;
+        try (Reader reader = new InputStreamReader(openBody(response), StandardCharsets.UTF_8)) {
+            schedules = ScheduleParser.parseAll(reader, groupIds);
+        } finally {
+            PARSE_TIME.recordSince(parseStarted);
+            FETCH_TIME.recordSince(started);
         }
+        return schedules;
     }
 
-    public static String getWeekSchedule(String json, String groupNumber) throws ScheduleException {
-        try {
-            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+    private static void checkStatus(int status) throws IOException, ScheduleException {
+        // сбой на стороне сервера: такой запрос имеет смысл повторить
+        if (status >= 500 || status == 429) {
+            throw new ServerErrorException("API расписания ответило " + status);
+        }
+        if (status != 200) {
+            throw new ScheduleException("API вернуло ошибку: " + status);
+        }
+    }
 
-            if (!root.has(groupNumber)) {
-                throw new ScheduleException("Группа не найдена");
-            }
+    private static InputStream openBody(HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        if ("gzip".equalsIgnoreCase(response.headers().firstValue("Content-Encoding").orElse(""))) {
+            return new GZIPInputStream(body);
+        }
+        return body;
+    }
 
-            JsonObject groupData = root.getAsJsonObject(groupNumber);
-            JsonObject days = groupData.getAsJsonObject("days");
+    public static String getCurrentWeekParity() {
+        return currentWeekParity().getTitle();
+    }
 
-            StringBuilder result = new StringBuilder();
-            result.append(getCurrentWeekInfo()).append("\n");
-            result.append("*Расписание для группы ").append(groupNumber).append("*\n\n");
+    static WeekParity currentWeekParity() {
+        return calendar.today().getParity();
+    }
 
-            String[] russianDays = {"Понедельник", "Вторник", "Среда", "Четверг", "Пятница", "Суббота"};
+    static WeekParity weekParity(LocalDate date) {
+        return calendar.parity(date);
+    }
 
-            boolean hasLessons = false;
+    public static String getCurrentWeekInfo() {
+        return getWeekInfo(currentWeekParity(), true);
+    }
 
-            for (int i = 0; i < 6; i++) {
-                String dayKey = String.valueOf(i);
-                if (days.has(dayKey)) {
-                    JsonObject day = days.getAsJsonObject(dayKey);
-                    if (day.has("lessons") && !day.get("lessons").isJsonNull()) {
-                        JsonArray lessons = day.getAsJsonArray("lessons");
-                        if (lessons.size() > 0) {
-                            hasLessons = true;
+    // Заголовок называет неделю, которую показывают; текущей она названа, только если это она и есть
+    private static String getWeekInfo(WeekParity parity, boolean current) {
+        return (current ? "*Текущая неделя:* " : "*Неделя:* ") + parity.getTitle();
+    }
 
-                            String dayName = day.has("name") ?
-                                    day.get("name").getAsString() : russianDays[i];
-                            result.append("*").append(dayName).append("*:\n");
+    public static String parseScheduleForDay(GroupSchedule schedule, String day) throws ScheduleException {
+        int dayIndex = getDayIndex(day);
 
-                            for (JsonElement lesson : lessons) {
-                                JsonObject lessonObj = lesson.getAsJsonObject();
-                                String startTime = getSafeString(lessonObj, "start_time", "??:??");
-                                String endTime = getSafeString(lessonObj, "end_time", "??:??");
-                                String subject = getSafeString(lessonObj, "name", "Предмет");
-                                String type = getSafeString(lessonObj, "subjectType", "");
-                                String room = getSafeString(lessonObj, "room", "");
+        if (dayIndex == -1) {
+            throw new ScheduleException("Неверный день недели");
+        }
 
-                                result.append("  • ").append(startTime).append("-").append(endTime);
-                                result.append(" - ").append(subject);
+        return getScheduleForDay(schedule, dayIndex, currentWeekParity());
+    }
 
-                                if (!type.isEmpty()) {
-                                    result.append(" (").append(type).append(")");
-                                }
+    // Текст зависит и от того, текущая ли это неделя, поэтому это часть ключа
+    static String getScheduleForDay(GroupSchedule schedule, int dayIndex, WeekParity parity) {
+        boolean current = parity == currentWeekParity();
+        return replies.get(schedule, (current ? "day" : "other-day") + dayIndex, parity,
+                () -> renderDay(schedule, dayIndex, parity, current));
+    }
 
-                                if (!room.isEmpty() && !room.equals("null")) {
-                                    result.append(" (").append(room).append(")");
-                                }
+    // Только занятия недели parity
+    static String renderDay(GroupSchedule schedule, int dayIndex, WeekParity parity, boolean current) {
+        DaySchedule daySchedule = schedule.getDay(dayIndex);
+        if (daySchedule == null || !hasLessons(daySchedule, parity)) {
+            return "В этот день занятий нет.";
+        }
 
-                                result.append("\n");
-                            }
-                            result.append("\n");
-                        }
-                    }
-                }
+        StringBuilder result = new StringBuilder();
+        String dayName = daySchedule.getName() != null ? daySchedule.getName() : getRussianDayName(dayIndex);
+
+        result.append(getWeekInfo(parity, current)).append("\n");
+        result.append("*").append(dayName).append("*\n\n");
+
+        for (Lesson lesson : daySchedule.getLessons()) {
+            if (!lesson.getWeek().matches(parity)) {
+                continue;
             }
+            String weekInfo = lesson.getWeek().getDescription();
 
-            if (!hasLessons) {
-                return "На этой неделе занятий нет.";
+            result.append("*").append(orDefault(lesson.getStartText(), "??:??"))
+                    .append(" - ").append(orDefault(lesson.getEndText(), "??:??"));
+            if (!weekInfo.isEmpty()) {
+                result.append(" ").append(weekInfo);
             }
+            result.append("*\n");
 
-            return result.toString();
+            result.append(" ").append(orDefault(lesson.getName(), "Предмет не указан"));
+            if (!lesson.getSubjectType().isEmpty()) {
+                result.append(" (").append(lesson.getSubjectType()).append(")");
+            }
+            result.append("\n");
 
-        } catch (JsonSyntaxException e) {
-            throw new ScheduleException("Ошибка формата данных");
+            if (!lesson.getTeacher().isEmpty()) {
+                result.append(" ").append(lesson.getTeacher()).append("\n");
+            }
+
+            if (lesson.isOnline()) {
+                result.append(" Онлайн");
+            } else if (!lesson.getRoom().isEmpty()) {
+                result.append(" Ауд. ").append(lesson.getRoom());
+            }
+
+            result.append("\n\n");
         }
+
+        return result.toString();
     }
 
-    public static String findNearestLesson(String json, String groupNumber) throws ScheduleException {
-        try {
-            LocalTime now = LocalTime.now();
-            LocalDate today = LocalDate.now();
-            DayOfWeek currentDayOfWeek = today.getDayOfWeek();
+    public static String getWeekSchedule(GroupSchedule schedule) {
+        return getWeekSchedule(schedule, currentWeekParity());
+    }
+
+    static String getWeekSchedule(GroupSchedule schedule, WeekParity parity) {
+        boolean current = parity == currentWeekParity();
+        return replies.get(schedule, current ? "week" : "other-week", parity,
+                () -> renderWeek(schedule, parity, current));
+    }
 
-            JsonObject root = JsonParser.parseString(json).getAsJsonObject();
+    static String renderWeek(GroupSchedule schedule, WeekParity parity, boolean current) {
+        StringBuilder result = new StringBuilder();
+        result.append(getWeekInfo(parity, current)).append("\n");
+        result.append("*Расписание для группы ").append(schedule.getGroupNumber()).append("*\n\n");
+
+        boolean hasLessons = false;
 
-            if (!root.has(groupNumber)) {
-                throw new ScheduleException("Группа не найдена. Попробуйте изменить номер группы.");
+        for (int i = 0; i < 6; i++) {
+            DaySchedule day = schedule.getDay(i);
+            if (day == null || !hasLessons(day, parity)) {
+                continue;
             }
+            hasLessons = true;
 
-            JsonObject groupData = root.getAsJsonObject(groupNumber);
-            JsonObject days = groupData.getAsJsonObject("days");
-
-            // Ищем на сегодня
-            int todayIndex = currentDayOfWeek.getValue() - 1;
-            String todayKey = String.valueOf(todayIndex);
-
-            if (days.has(todayKey)) {
-                JsonObject todayObj = days.getAsJsonObject(todayKey);
-                if (todayObj.has("lessons") && !todayObj.get("lessons").isJsonNull()) {
-                    JsonArray lessons = todayObj.getAsJsonArray("lessons");
-
-                    JsonObject nearestLesson = null;
-                    LocalTime nearestTime = null;
-
-                    for (JsonElement lesson : lessons) {
-                        JsonObject lessonObj = lesson.getAsJsonObject();
-                        String startTimeStr = getSafeString(lessonObj, "start_time", "");
-                        if (!startTimeStr.isEmpty()) {
-                            try {
-                                LocalTime lessonTime = LocalTime.parse(startTimeStr);
-
-                                String weekType = getSafeString(lessonObj, "week", "");
-                                if (isLessonForCurrentWeek(weekType)) {
-                                    if (lessonTime.isAfter(now) || lessonTime.equals(now)) {
-                                        if (nearestTime == null || lessonTime.isBefore(nearestTime)) {
-                                            nearestTime = lessonTime;
-                                            nearestLesson = lessonObj;
-                                        }
-                                    }
-                                }
-                            } catch (DateTimeException e) {
-                                continue;
-                            }
-                        }
-                    }
+            String dayName = day.getName() != null ? day.getName() : getRussianDayName(i);
+            result.append("*").append(dayName).append("*:\n");
 
-                    if (nearestLesson != null) {
-                        return formatNearestLesson(nearestLesson, "сегодня");
-                    }
+            for (Lesson lesson : day.getLessons()) {
+                if (!lesson.getWeek().matches(parity)) {
+                    continue;
                 }
-            }
+                result.append("  • ").append(orDefault(lesson.getStartText(), "??:??"))
+                        .append("-").append(orDefault(lesson.getEndText(), "??:??"));
+                result.append(" - ").append(orDefault(lesson.getName(), "Предмет"));
 
-            // Если на сегодня не нашли, ищем на ближайшие дни
-            for (int i = 1; i <= 7; i++) {
-                int nextDayIndex = (todayIndex + i) % 7;
-                String nextDayKey = String.valueOf(nextDayIndex);
-
-                if (days.has(nextDayKey)) {
-                    JsonObject dayObj = days.getAsJsonObject(nextDayKey);
-                    if (dayObj.has("lessons") && !dayObj.get("lessons").isJsonNull()) {
-                        JsonArray lessons = dayObj.getAsJsonArray("lessons");
-
-                        if (lessons.size() > 0) {
-                            JsonObject firstLesson = lessons.get(0).getAsJsonObject();
-
-                            String dayName = "";
-                            switch (i) {
-                                case 1: dayName = "завтра"; break;
-                                case 2: dayName = "послезавтра"; break;
-                                default:
-                                    LocalDate targetDate = today.plusDays(i);
-                                    dayName = targetDate.getDayOfWeek().getDisplayName(TextStyle.FULL, new Locale("ru"));
-                                    dayName = dayName.substring(0, 1).toUpperCase() + dayName.substring(1);
-                            }
-
-                            return formatNearestLesson(firstLesson, dayName);
-                        }
-                    }
+                if (!lesson.getSubjectType().isEmpty()) {
+                    result.append(" (").append(lesson.getSubjectType()).append(")");
                 }
+
+                if (!lesson.getRoom().isEmpty()) {
+                    result.append(" (").append(lesson.getRoom()).append(")");
+                }
+
+                result.append("\n");
+            }
+            result.append("\n");
+        }
+
+        if (!hasLessons) {
+            return "На этой неделе занятий нет.";
+        }
+
+        return result.toString();
+    }
+
+    private static boolean hasLessons(DaySchedule day, WeekParity parity) {
+        for (Lesson lesson : day.getLessons()) {
+            if (lesson.getWeek().matches(parity)) {
+                return true;
             }
+        }
+        return false;
+    }
+
+    public static String findNearestLesson(GroupSchedule schedule) {
+        SemesterCalendar.Day today = calendar.today();
+        LocalDateTime now = calendar.now();
+        WeekParity currentWeek = today.getParity();
+        LessonTimeline timeline = schedule.getTimeline();
 
+        int todayIndex = today.getDayIndex();
+        int position = LessonTimeline.cyclePosition(todayIndex, now.toLocalTime().toSecondOfDay(), currentWeek);
+        int nearest = timeline.indexAt(position);
+        if (nearest == -1) {
             return "Ближайших занятий не найдено";
+        }
 
-        } catch (JsonSyntaxException e) {
-            throw new ScheduleException("Ошибка формата данных");
+        // день занятия считаем от начала сегодняшнего дня, с учётом перехода через неделю и цикл
+        int daysAhead = (timeline.secondsUntil(nearest, position) + now.toLocalTime().toSecondOfDay())
+                / LessonTimeline.SECONDS_PER_DAY;
+        String dayName;
+        switch (daysAhead) {
+            case 0: dayName = "сегодня"; break;
+            case 1: dayName = "завтра"; break;
+            case 2: dayName = "послезавтра"; break;
+            default: dayName = getRussianDayName((todayIndex + daysAhead) % 7);
         }
+
+        return formatNearestLesson(schedule, timeline.getDayIndex(nearest), timeline.getLessonIndex(nearest),
+                dayName, currentWeek);
     }
 
-    private static String formatNearestLesson(JsonObject lesson, String day) {
-        String startTime = getSafeString(lesson, "start_time", "??:??");
-        String endTime = getSafeString(lesson, "end_time", "??:??");
-        String subject = getSafeString(lesson, "name", "Предмет не указан");
-        String type = getSafeString(lesson, "subjectType", "");
-        String teacher = getSafeString(lesson, "teacher", "");
-        String room = getSafeString(lesson, "room", "");
-        String form = getSafeString(lesson, "form", "");
-        String weekType = getSafeString(lesson, "week", "");
+    // Ключ "ближайшего" - конкретное занятие и подпись дня, поэтому текст тоже кэшируется
+    private static String formatNearestLesson(GroupSchedule schedule, int dayIndex, int lessonIndex,
+                                              String day, WeekParity parity) {
+        Lesson lesson = schedule.getDay(dayIndex).getLessons().get(lessonIndex);
+        String view = "near" + dayIndex + '.' + lessonIndex + '.' + day;
+        return replies.get(schedule, view, parity, () -> formatNearestLesson(lesson, day));
+    }
 
+    static String formatNearestLesson(Lesson lesson, String day) {
         StringBuilder result = new StringBuilder();
         result.append("*Ближайшее занятие*\n\n");
         result.append("*").append(day).append("*\n");
-        result.append("*").append(startTime).append(" - ").append(endTime).append("*\n");
-        result.append(" ").append(subject);
+        result.append("*").append(orDefault(lesson.getStartText(), "??:??"))
+                .append(" - ").append(orDefault(lesson.getEndText(), "??:??")).append("*\n");
+        result.append(" ").append(orDefault(lesson.getName(), "Предмет не указан"));
 
-        if (!type.isEmpty()) {
-            result.append(" (").append(type).append(")");
+        if (!lesson.getSubjectType().isEmpty()) {
+            result.append(" (").append(lesson.getSubjectType()).append(")");
         }
         result.append("\n");
 
-        if (!teacher.isEmpty() && !teacher.equals("null")) {
-            result.append(" ").append(teacher).append("\n");
+        if (!lesson.getTeacher().isEmpty()) {
+            result.append(" ").append(lesson.getTeacher()).append("\n");
         }
 
-        if ("online".equalsIgnoreCase(form) || "distant".equalsIgnoreCase(form)) {
+        if (lesson.isOnline()) {
             result.append(" Онлайн");
-        } else if (!room.isEmpty() && !room.equals("null")) {
-            result.append(" Ауд. ").append(room);
+        } else if (!lesson.getRoom().isEmpty()) {
+            result.append(" Ауд. ").append(lesson.getRoom());
         }
 
-        if (!weekType.isEmpty() && !weekType.equals("null")) {
-            result.append("\n ").append(getWeekTypeInfo(weekType));
+        if (lesson.getWeek() != WeekParity.ANY) {
+            result.append("\n ").append(lesson.getWeek().getDescription());
         }
 
         return result.toString();
     }
 
-    private static boolean isLessonForCurrentWeek(String weekType) {
-        if (weekType.isEmpty() || weekType.equals("null") || weekType.equals("3")) {
-            return true;
-        }
-
-        String currentParity = getCurrentWeekParity();
-        boolean isCurrentOdd = currentParity.equals("нечётная");
-
-        return (isCurrentOdd && weekType.equals("1")) || (!isCurrentOdd && weekType.equals("2"));
-    }
-
-    private static String getWeekTypeInfo(String weekType) {
-        switch (weekType) {
-            case "1": return "(Нечётная неделя)";
-            case "2": return "(Чётная неделя)";
-            case "3": return "(Все недели)";
-            default: return "";
-        }
+    private static String orDefault(String value, String defaultValue) {
+        return value.isEmpty() ? defaultValue : value;
     }
 
-    private static int getDayIndex(String day) {
+    static int getDayIndex(String day) {
         switch (day.toLowerCase()) {
             case "monday": return 0;
             case "tuesday": return 1;
@@ -378,48 +630,8 @@ public class ScheduleFetcher {
     }
 
     private static String getRussianDayName(int index) {
-        String[] days = {"Понедельник", "Вторник", "Среда", "Четверг", "Пятница", "Суббота"};
+        String[] days = {"Понедельник", "Вторник", "Среда", "Четверг", "Пятница", "Суббота", "Воскресенье"};
         return (index >= 0 && index < days.length) ? days[index] : "День недели";
     }
 
-    private static String getSafeString(JsonObject obj, String key, String defaultValue) {
-        if (obj.has(key) && !obj.get(key).isJsonNull()) {
-            String value = obj.get(key).getAsString();
-            return (value == null || value.equals("null") || value.trim().isEmpty()) ?
-                    defaultValue : value.trim();
-        }
-        return defaultValue;
-    }
-
-    public static String getTomorrowDayName() {
-        LocalDate tomorrow = LocalDate.now().plusDays(1);
-        DayOfWeek day = tomorrow.getDayOfWeek();
-        return translateDay(day.getDisplayName(TextStyle.FULL, new Locale("ru")).toLowerCase());
-    }
-
-    public static String getTodayDayName() {
-        LocalDate today = LocalDate.now();
-        DayOfWeek day = today.getDayOfWeek();
-        return translateDay(day.getDisplayName(TextStyle.FULL, new Locale("ru")).toLowerCase());
-    }
-
-    private static String translateDay(String day) {
-        switch (day) {
-            case "понедельник": return "monday";
-            case "вторник": return "tuesday";
-            case "среда": return "wednesday";
-            case "четверг": return "thursday";
-            case "пятница": return "friday";
-            case "суббота": return "saturday";
-            default: return day;
-        }
-    }
-
-
 }
-
-class ScheduleException extends Exception {
-    public ScheduleException(String message) {
-        super(message);
-    }
-}
\ No newline at end of file
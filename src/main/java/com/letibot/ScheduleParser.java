@@ -0,0 +1,203 @@
+package com.letibot;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.*;
+
+// Потоковый разбор ответа API в GroupSchedule.
+// Корень ответа - объект с ключами-номерами групп; чужие группы и ненужные поля
+// пропускаются через skipValue() без построения дерева.
+public class ScheduleParser {
+
+    private static final Comparator<Lesson> BY_START_TIME =
+            Comparator.comparing(lesson -> lesson.getStartText().isEmpty() ? "00:00" : lesson.getStartText());
+
+    public static GroupSchedule parse(String json, String groupNumber) throws ScheduleException {
+        try {
+            return parse(new StringReader(json), groupNumber);
+        } catch (IOException e) {
+            throw new ScheduleException("Ошибка формата данных");
+        }
+    }
+
+    public static GroupSchedule parse(Reader input, String groupNumber) throws IOException, ScheduleException {
+        try {
+            JsonReader reader = new JsonReader(input);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals(groupNumber)) {
+                    return readGroup(reader, groupNumber);
+                }
+                reader.skipValue();
+            }
+            throw new ScheduleException("Группа не найдена");
+
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new ScheduleException("Ошибка формата данных");
+        }
+    }
+
+    // Ответ на запрос нескольких групп: нужные группы разбираются за один проход, остальные пропускаются.
+    // Групп, которых нет в ответе, нет и в результате
+    public static Map<String, GroupSchedule> parseAll(Reader input, Collection<String> groupNumbers)
+            throws IOException, ScheduleException {
+        Set<String> wanted = new HashSet<>(groupNumbers);
+        Map<String, GroupSchedule> schedules = new HashMap<>();
+        try {
+            JsonReader reader = new JsonReader(input);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String groupNumber = reader.nextName();
+                if (wanted.contains(groupNumber) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    schedules.put(groupNumber, readGroup(reader, groupNumber));
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return schedules;
+
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            throw new ScheduleException("Ошибка формата данных");
+        }
+    }
+
+    private static GroupSchedule readGroup(JsonReader reader, String groupNumber) throws IOException {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("days") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readDays(reader, days);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new GroupSchedule(groupNumber, days, System.currentTimeMillis());
+    }
+
+    private static void readDays(JsonReader reader, DaySchedule[] days) throws IOException {
+        // Одинаковые строки (преподаватели, аудитории, типы) храним в одном экземпляре
+        Map<String, String> strings = new HashMap<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            int index = dayIndex(reader.nextName());
+            if (index >= 0 && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                days[index] = readDay(reader, index, strings);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static DaySchedule readDay(JsonReader reader, int index, Map<String, String> strings) throws IOException {
+        String name = "";
+        List<Lesson> lessons = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (field.equals("name")) {
+                name = readString(reader);
+            } else if (field.equals("lessons") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    lessons.add(readLesson(reader, strings));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        lessons.sort(BY_START_TIME);
+        return new DaySchedule(index, name.isEmpty() ? null : name, lessons);
+    }
+
+    private static Lesson readLesson(JsonReader reader, Map<String, String> strings) throws IOException {
+        String startTime = "";
+        String endTime = "";
+        String name = "";
+        String subjectType = "";
+        String teacher = "";
+        String room = "";
+        String form = "";
+        String week = "";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "start_time": startTime = readString(reader); break;
+                case "end_time": endTime = readString(reader); break;
+                case "name": name = readString(reader); break;
+                case "subjectType": subjectType = readString(reader); break;
+                case "teacher": teacher = readString(reader); break;
+                case "room": room = readString(reader); break;
+                case "form": form = readString(reader); break;
+                case "week": week = readString(reader); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Lesson(
+                dedupe(strings, startTime),
+                dedupe(strings, endTime),
+                dedupe(strings, name),
+                dedupe(strings, subjectType),
+                dedupe(strings, teacher),
+                dedupe(strings, room),
+                dedupe(strings, form),
+                WeekParity.fromCode(week)
+        );
+    }
+
+    // Строка, число или логическое значение; null, "null" и пустые строки дают ""
+    private static String readString(JsonReader reader) throws IOException {
+        String value;
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                value = reader.nextString().trim();
+                break;
+            case BOOLEAN:
+                value = String.valueOf(reader.nextBoolean());
+                break;
+            case NULL:
+                reader.nextNull();
+                return "";
+            default:
+                reader.skipValue();
+                return "";
+        }
+        return value.equals("null") ? "" : value;
+    }
+
+    private static int dayIndex(String key) {
+        if (key.length() == 1) {
+            int index = key.charAt(0) - '0';
+            if (index >= 0 && index < GroupSchedule.DAYS_IN_WEEK) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private static String dedupe(Map<String, String> strings, String value) {
+        if (value.isEmpty()) {
+            return "";
+        }
+        String existing = strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+}
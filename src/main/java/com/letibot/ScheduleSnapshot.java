@@ -0,0 +1,122 @@
+package com.letibot;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Снимок разобранных расписаний на диске: после перезапуска кэш сразу тёплый,
+// а при недоступности API есть что показать.
+// Формат: gzip(DataOutputStream) - заголовок, затем группы с днями и занятиями.
+public class ScheduleSnapshot {
+
+    private static final int MAGIC = 0x4C535332; // "LSS2"
+
+    public static void save(Path file, List<GroupSchedule> schedules) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(schedules.size());
+            for (GroupSchedule schedule : schedules) {
+                writeGroup(out, schedule);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static List<GroupSchedule> load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Collections.emptyList();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Неизвестный формат файла " + file);
+            }
+            int count = in.readInt();
+            List<GroupSchedule> schedules = new ArrayList<>(count);
+            Map<String, String> strings = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                schedules.add(readGroup(in, strings));
+            }
+            return schedules;
+        }
+    }
+
+    private static void writeGroup(DataOutputStream out, GroupSchedule schedule) throws IOException {
+        out.writeUTF(schedule.getGroupNumber());
+        out.writeLong(schedule.getFetchedAt());
+        out.writeUTF(schedule.getEtag() != null ? schedule.getEtag() : "");
+        out.writeUTF(schedule.getLastModified() != null ? schedule.getLastModified() : "");
+        for (int i = 0; i < GroupSchedule.DAYS_IN_WEEK; i++) {
+            DaySchedule day = schedule.getDay(i);
+            out.writeBoolean(day != null);
+            if (day == null) {
+                continue;
+            }
+            out.writeUTF(day.getName() != null ? day.getName() : "");
+            out.writeShort(day.getLessons().size());
+            for (Lesson lesson : day.getLessons()) {
+                out.writeUTF(lesson.getStartText());
+                out.writeUTF(lesson.getEndText());
+                out.writeUTF(lesson.getName());
+                out.writeUTF(lesson.getSubjectType());
+                out.writeUTF(lesson.getTeacher());
+                out.writeUTF(lesson.getRoom());
+                out.writeUTF(lesson.getForm());
+                out.writeByte(lesson.getWeek().ordinal());
+            }
+        }
+    }
+
+    private static GroupSchedule readGroup(DataInputStream in, Map<String, String> strings) throws IOException {
+        String groupNumber = in.readUTF();
+        long fetchedAt = in.readLong();
+        String etag = in.readUTF();
+        String lastModified = in.readUTF();
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        WeekParity[] parities = WeekParity.values();
+
+        for (int i = 0; i < days.length; i++) {
+            if (!in.readBoolean()) {
+                continue;
+            }
+            String name = in.readUTF();
+            int lessonCount = in.readUnsignedShort();
+            List<Lesson> lessons = new ArrayList<>(lessonCount);
+            for (int j = 0; j < lessonCount; j++) {
+                lessons.add(new Lesson(
+                        readString(in, strings),
+                        readString(in, strings),
+                        readString(in, strings),
+                        readString(in, strings),
+                        readString(in, strings),
+                        readString(in, strings),
+                        readString(in, strings),
+                        parities[in.readUnsignedByte()]
+                ));
+            }
+            days[i] = new DaySchedule(i, name.isEmpty() ? null : name, lessons);
+        }
+
+        return new GroupSchedule(groupNumber, days, fetchedAt,
+                etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified);
+    }
+
+    // Повторяющиеся строки разных групп хранятся в одном экземпляре
+    private static String readString(DataInputStream in, Map<String, String> strings) throws IOException {
+        String value = in.readUTF();
+        if (value.isEmpty()) {
+            return "";
+        }
+        String existing = strings.putIfAbsent(value, value);
+        return existing != null ? existing : value;
+    }
+}
@@ -0,0 +1,130 @@
+package com.letibot;
+
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.InlineKeyboardMarkup;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Экран расписания в режиме встроенных кнопок: день или неделя с заданной чётностью.
+// Каждая кнопка несёт в callback_data экран, на который ведёт: "d31" - четверг нечётной недели,
+// "w2" - чётная неделя, "t" - сегодня. После двоеточия - хэш экрана, на котором кнопка нажата:
+// если новый экран с ним совпадает, сообщение не правится.
+final class ScheduleView {
+
+    private static final int WEEK = -1;
+    private static final String TODAY = "t";
+    private static final String[] SHORT_DAY_NAMES = {"Пн", "Вт", "Ср", "Чт", "Пт", "Сб", "Вс"};
+
+    private final int dayIndex;
+    private final WeekParity parity;
+
+    private ScheduleView(int dayIndex, WeekParity parity) {
+        this.dayIndex = dayIndex;
+        this.parity = parity;
+    }
+
+    static ScheduleView today() {
+        SemesterCalendar.Day today = ScheduleFetcher.getCalendar().today();
+        return new ScheduleView(today.getDayIndex(), today.getParity());
+    }
+
+    // Завтра в воскресенье - понедельник уже следующей недели, со своей чётностью
+    static ScheduleView tomorrow() {
+        SemesterCalendar.Day today = ScheduleFetcher.getCalendar().today();
+        return new ScheduleView(today.getTomorrowIndex(), today.getTomorrowParity());
+    }
+
+    static ScheduleView day(int dayIndex) {
+        return new ScheduleView(dayIndex, ScheduleFetcher.currentWeekParity());
+    }
+
+    static ScheduleView week() {
+        return new ScheduleView(WEEK, ScheduleFetcher.currentWeekParity());
+    }
+
+    // null, если данные не от наших кнопок
+    static ScheduleView parse(String data) {
+        String code = data.indexOf(':') >= 0 ? data.substring(0, data.indexOf(':')) : data;
+        if (code.equals(TODAY)) {
+            return today();
+        }
+        if (code.length() == 2 && code.charAt(0) == 'w') {
+            WeekParity parity = WeekParity.fromCode(code.substring(1));
+            return parity == WeekParity.ODD || parity == WeekParity.EVEN ? new ScheduleView(WEEK, parity) : null;
+        }
+        if (code.length() == 3 && code.charAt(0) == 'd') {
+            int dayIndex = code.charAt(1) - '0';
+            WeekParity parity = WeekParity.fromCode(code.substring(2));
+            if (dayIndex >= 0 && dayIndex < GroupSchedule.DAYS_IN_WEEK
+                    && (parity == WeekParity.ODD || parity == WeekParity.EVEN)) {
+                return new ScheduleView(dayIndex, parity);
+            }
+        }
+        return null;
+    }
+
+    // Хэш экрана, на котором нажата кнопка; null, если его нет в данных
+    static String previousHash(String data) {
+        int separator = data.indexOf(':');
+        return separator >= 0 ? data.substring(separator + 1) : null;
+    }
+
+    String render(GroupSchedule schedule) {
+        return dayIndex == WEEK
+                ? ScheduleFetcher.getWeekSchedule(schedule, parity)
+                : ScheduleFetcher.getScheduleForDay(schedule, dayIndex, parity);
+    }
+
+    // Текст вместе с экраном: одинаковый текст на разных экранах даёт разные кнопки
+    String hash(String text) {
+        return Integer.toString((code() + text).hashCode(), 36);
+    }
+
+    InlineKeyboardMarkup keyboard(String hash) {
+        List<List<InlineKeyboardButton>> rows = new ArrayList<>();
+        WeekParity other = parity == WeekParity.EVEN ? WeekParity.ODD : WeekParity.EVEN;
+
+        List<InlineKeyboardButton> navigation = new ArrayList<>();
+        if (dayIndex == WEEK) {
+            for (int i = 0; i < 6; i++) {
+                navigation.add(button(SHORT_DAY_NAMES[i], dayCode(i, parity), hash));
+            }
+        } else {
+            // листаем с понедельника по субботу по кругу, воскресенье - между субботой и понедельником
+            int previous = dayIndex == 0 || dayIndex == 6 ? 5 : dayIndex - 1;
+            int next = dayIndex >= 5 ? 0 : dayIndex + 1;
+            navigation.add(button("« " + SHORT_DAY_NAMES[previous], dayCode(previous, parity), hash));
+            navigation.add(button("Неделя", weekCode(parity), hash));
+            navigation.add(button(SHORT_DAY_NAMES[next] + " »", dayCode(next, parity), hash));
+        }
+        rows.add(navigation);
+
+        List<InlineKeyboardButton> extra = new ArrayList<>();
+        String otherTitle = other.getTitle().substring(0, 1).toUpperCase() + other.getTitle().substring(1) + " неделя";
+        extra.add(button(otherTitle, dayIndex == WEEK ? weekCode(other) : dayCode(dayIndex, other), hash));
+        extra.add(button("Сегодня", TODAY, hash));
+        rows.add(extra);
+
+        return new InlineKeyboardMarkup(rows);
+    }
+
+    private String code() {
+        return dayIndex == WEEK ? weekCode(parity) : dayCode(dayIndex, parity);
+    }
+
+    private static String dayCode(int dayIndex, WeekParity parity) {
+        return "d" + dayIndex + parity.getCode();
+    }
+
+    private static String weekCode(WeekParity parity) {
+        return "w" + parity.getCode();
+    }
+
+    private static InlineKeyboardButton button(String text, String code, String hash) {
+        InlineKeyboardButton button = new InlineKeyboardButton();
+        button.setText(text);
+        button.setCallbackData(code + ':' + hash);
+        return button;
+    }
+}
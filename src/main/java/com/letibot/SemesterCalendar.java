@@ -0,0 +1,154 @@
+package com.letibot;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+
+// Календарь семестров: сезон и год для запроса к API, чётность недели и индекс дня.
+// Осенний семестр идёт с autumnStart до начала весеннего следующего года, весенний - с springStart
+// до осеннего. Недели считаются от понедельника недели начала семестра, первая неделя - нечётная.
+// Всё, что зависит от сегодняшней даты, считается один раз в сутки и хранится в Day.
+public class SemesterCalendar {
+
+    public static final String AUTUMN = "autumn";
+    public static final String SPRING = "spring";
+
+    // Сегодняшний день: индекс дня недели (0 - понедельник, 6 - воскресенье) и чётность, то же для завтра
+    public static final class Day {
+        private final LocalDate date;
+        private final int dayIndex;
+        private final WeekParity parity;
+        private final int tomorrowIndex;
+        private final WeekParity tomorrowParity;
+        private final String season;
+        private final int year;
+        private final long endsAtMillis;
+
+        private Day(LocalDate date, WeekParity parity, WeekParity tomorrowParity,
+                    String season, int year, long endsAtMillis) {
+            this.date = date;
+            this.dayIndex = dayIndex(date);
+            this.parity = parity;
+            this.tomorrowIndex = (dayIndex + 1) % 7;
+            this.tomorrowParity = tomorrowParity;
+            this.season = season;
+            this.year = year;
+            this.endsAtMillis = endsAtMillis;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public int getDayIndex() {
+            return dayIndex;
+        }
+
+        public WeekParity getParity() {
+            return parity;
+        }
+
+        public int getTomorrowIndex() {
+            return tomorrowIndex;
+        }
+
+        public WeekParity getTomorrowParity() {
+            return tomorrowParity;
+        }
+
+        public String getSeason() {
+            return season;
+        }
+
+        public int getYear() {
+            return year;
+        }
+    }
+
+    private final Clock clock;
+    private final MonthDay autumnStart;
+    private final MonthDay springStart;
+    // фактическое начало одного семестра, если оно не совпадает с autumnStart/springStart
+    private final LocalDate fixedStart;
+    private volatile Day today;
+
+    public SemesterCalendar(Clock clock, MonthDay autumnStart, MonthDay springStart, LocalDate fixedStart) {
+        this.clock = clock;
+        this.autumnStart = autumnStart;
+        this.springStart = springStart;
+        this.fixedStart = fixedStart;
+        this.today = computeDay(LocalDate.now(clock));
+    }
+
+    public Day today() {
+        Day day = today;
+        if (clock.millis() >= day.endsAtMillis) {
+            day = computeDay(LocalDate.now(clock));
+            today = day;
+        }
+        return day;
+    }
+
+    public LocalDateTime now() {
+        return LocalDateTime.now(clock);
+    }
+
+    public ZoneId getZone() {
+        return clock.getZone();
+    }
+
+    public WeekParity parity(LocalDate date) {
+        Day day = today();
+        if (date.equals(day.date)) {
+            return day.parity;
+        }
+        return parity(date, semesterStart(date));
+    }
+
+    public static int dayIndex(LocalDate date) {
+        return date.getDayOfWeek().getValue() - 1;
+    }
+
+    private Day computeDay(LocalDate date) {
+        LocalDate start = semesterStart(date);
+        LocalDate tomorrow = date.plusDays(1);
+        long endsAt = tomorrow.atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+        return new Day(date, parity(date, start), parity(tomorrow, semesterStart(tomorrow)),
+                isAutumn(start) ? AUTUMN : SPRING, start.getYear(), endsAt);
+    }
+
+    private static WeekParity parity(LocalDate date, LocalDate semesterStart) {
+        LocalDate firstMonday = semesterStart.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        long weeks = Math.floorDiv(ChronoUnit.DAYS.between(firstMonday, date), 7);
+        return weeks % 2 == 0 ? WeekParity.ODD : WeekParity.EVEN;
+    }
+
+    private LocalDate semesterStart(LocalDate date) {
+        LocalDate start;
+        LocalDate autumn = autumnStart.atYear(date.getYear());
+        LocalDate spring = springStart.atYear(date.getYear());
+        if (!date.isBefore(autumn)) {
+            start = autumn;
+        } else if (!date.isBefore(spring)) {
+            start = spring;
+        } else {
+            // январь и зимняя сессия относятся к осеннему семестру прошлого года
+            start = autumnStart.atYear(date.getYear() - 1);
+        }
+
+        if (fixedStart != null && isAutumn(fixedStart) == isAutumn(start)
+                && fixedStart.getYear() == start.getYear()) {
+            return fixedStart;
+        }
+        return start;
+    }
+
+    private boolean isAutumn(LocalDate start) {
+        return !MonthDay.from(start).isBefore(autumnStart) || MonthDay.from(start).isBefore(springStart);
+    }
+}
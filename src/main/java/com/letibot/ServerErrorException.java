@@ -0,0 +1,12 @@
+package com.letibot;
+
+import java.io.IOException;
+
+// Ответ 5xx: сервер жив, но запрос не выполнил, поэтому его можно повторить
+class ServerErrorException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public ServerErrorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,134 @@
+package com.letibot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Хэшированное колесо таймеров: слоты по tickMillis, задача кладётся в слот своего срока
+// и хранит число оставшихся оборотов. Добавление - O(1) из любого потока (через очередь),
+// срабатывание - один поток, который раз в тик обходит только текущий слот.
+// Задачи дальше одного оборота просто ждут в слоте, так что горизонт не ограничен.
+public class TimingWheel<T> {
+
+    public static final class Timeout<T> {
+        final T task;
+        final long deadline;
+        long rounds;
+        volatile boolean cancelled;
+
+        Timeout(T task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public T getTask() {
+            return task;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<T>>> slots;
+    private final ConcurrentLinkedQueue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> handler;
+    private final Thread worker;
+    private final long startTime;
+    private long tick;
+    private volatile boolean running = true;
+
+    public TimingWheel(String name, long tickMillis, int wheelSize, Consumer<T> handler) {
+        int size = Integer.highestOneBit(Math.max(2, wheelSize - 1) << 1);
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.slots = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.handler = handler;
+        this.startTime = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    public void start() {
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    // deadline - время срабатывания в мс с начала эпохи; прошедшие сроки срабатывают на ближайшем тике
+    public Timeout<T> schedule(T task, long deadline) {
+        Timeout<T> timeout = new Timeout<>(task, deadline);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        while (running) {
+            long tickEnd = startTime + (tick + 1) * tickMillis;
+            long sleep = tickEnd - System.currentTimeMillis();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+
+            transferPending();
+            expire(slots.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    // Новые задачи попадают в колесо только из потока колеса, поэтому слоты без блокировок
+    private void transferPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(tick, (timeout.deadline - startTime) / tickMillis);
+            timeout.rounds = (ticks - tick) / slots.size();
+            slots.get((int) (ticks & mask)).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout<T>> slot) {
+        List<Timeout<T>> due = new ArrayList<>();
+        int kept = 0;
+        for (Timeout<T> timeout : slot) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                slot.set(kept++, timeout);
+            } else {
+                due.add(timeout);
+            }
+        }
+        slot.subList(kept, slot.size()).clear();
+
+        for (Timeout<T> timeout : due) {
+            try {
+                handler.accept(timeout.task);
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка в задаче таймера: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.letibot;
+
+// Ведро токенов: ratePerSecond токенов в секунду, не больше burst про запас
+public class TokenBucket {
+
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+    // до этого момента (System.nanoTime) токенов нет совсем
+    private long pausedUntil;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        this.tokensPerNano = ratePerSecond / 1_000_000_000d;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+    // 0, если токен взят; иначе сколько наносекунд ждать до следующего токена
+    public synchronized long tryAcquire() {
+        refill();
+        long paused = pausedUntil - System.nanoTime();
+        if (paused > 0) {
+            return paused;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    // Ждёт, пока появится токен
+    public void acquire() throws InterruptedException {
+        long wait;
+        while ((wait = tryAcquire()) > 0) {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+        }
+    }
+
+    // Ни одного токена ближайшие nanos наносекунд; после паузы ведро наполняется с нуля
+    public synchronized void pause(long nanos) {
+        long until = System.nanoTime() + nanos;
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        tokens = 0;
+        lastRefill = pausedUntil;
+    }
+
+    // Ведро полное - значит, им давно не пользовались и его можно забыть
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= burst;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (now - lastRefill <= 0) {
+            return;
+        }
+        tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,182 @@
+package com.letibot;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+// Параллельная обработка обновлений с сохранением порядка внутри одного чата.
+// Для каждого чата держится своя очередь, которую в каждый момент разбирает не более одного потока.
+// Общее число ожидающих обновлений ограничено: при переполнении submit() ждёт, тормозя опрос Telegram.
+// Асинхронная задача (submitAsync) отпускает поток сразу; следующее обновление чата начнётся,
+// когда завершится возвращённое ею будущее.
+public class UpdateDispatcher {
+
+    private static final class ChatQueue {
+        final ArrayDeque<Supplier<? extends CompletionStage<?>>> tasks = new ArrayDeque<>();
+    }
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final ExecutorService executor;
+    private final Semaphore capacity;
+    private final int maxPending;
+    private final int maxPerChat;
+    // Очереди меняются только внутри compute*, поэтому отдельные блокировки не нужны
+    private final ConcurrentHashMap<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown;
+
+    public UpdateDispatcher(int threads, int maxPending, int maxPerChat) {
+        this.executor = createExecutor(threads);
+        this.maxPending = maxPending;
+        this.maxPerChat = maxPerChat;
+        this.capacity = new Semaphore(maxPending);
+    }
+
+    // Виртуальные потоки, если JVM их поддерживает (Java 21+), иначе ограниченный пул обычных потоков
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            System.out.println("Обработка обновлений: виртуальные потоки");
+            return (ExecutorService) executor;
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Обработка обновлений: пул из " + threads + " потоков");
+            return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int counter;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "update-worker-" + (++counter));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+    }
+
+    // false, если обновление отброшено (остановка или переполнена очередь чата)
+    public boolean submit(long chatId, Runnable task) {
+        return submitAsync(chatId, () -> {
+            task.run();
+            return DONE;
+        });
+    }
+
+    // Обновление считается обработанным, когда завершится будущее, которое вернула задача
+    public boolean submitAsync(long chatId, Supplier<? extends CompletionStage<?>> task) {
+        if (shuttingDown) {
+            return false;
+        }
+
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        boolean[] accepted = new boolean[1];
+        boolean[] start = new boolean[1];
+        chats.compute(chatId, (id, queue) -> {
+            if (queue == null) {
+                queue = new ChatQueue();
+                start[0] = true;
+            }
+            if (queue.tasks.size() < maxPerChat) {
+                queue.tasks.add(task);
+                accepted[0] = true;
+            }
+            return queue;
+        });
+
+        if (!accepted[0]) {
+            capacity.release();
+            System.err.println("Очередь чата " + chatId + " переполнена, обновление пропущено");
+            return false;
+        }
+
+        if (start[0]) {
+            try {
+                executor.execute(() -> drain(chatId, task));
+            } catch (RejectedExecutionException e) {
+                // пул уже остановлен - дорабатываем очередь чата в текущем потоке
+                drain(chatId, task);
+            }
+        }
+        return true;
+    }
+
+    // Голова очереди - задача, которая выполняется сейчас; пока очередь не пуста, у чата есть обработчик
+    private void drain(long chatId, Supplier<? extends CompletionStage<?>> first) {
+        Supplier<? extends CompletionStage<?>> task = first;
+        while (task != null) {
+            CompletableFuture<?> running;
+            try {
+                running = task.get().toCompletableFuture();
+            } catch (RuntimeException e) {
+                running = CompletableFuture.failedFuture(e);
+            }
+            if (!running.isDone()) {
+                // очередь чата продолжит поток, который завершит обработку; этот поток свободен
+                running.whenComplete((result, error) -> resume(chatId, error));
+                return;
+            }
+            task = finish(chatId, running.handle((result, error) -> error).join());
+        }
+    }
+
+    private void resume(long chatId, Throwable error) {
+        Supplier<? extends CompletionStage<?>> next = finish(chatId, error);
+        if (next == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(chatId, next));
+        } catch (RejectedExecutionException e) {
+            drain(chatId, next);
+        }
+    }
+
+    private Supplier<? extends CompletionStage<?>> finish(long chatId, Throwable error) {
+        if (error != null) {
+            System.err.println("Ошибка обработки обновления: " + ScheduleCache.unwrap(error).getMessage());
+        }
+        capacity.release();
+        return completeAndNext(chatId);
+    }
+
+    // Убирает выполненную задачу; пустая очередь удаляется атомарно, и следующий submit запустит обработчик заново
+    private Supplier<? extends CompletionStage<?>> completeAndNext(long chatId) {
+        AtomicReference<Supplier<? extends CompletionStage<?>>> next = new AtomicReference<>();
+        chats.computeIfPresent(chatId, (id, queue) -> {
+            queue.tasks.poll();
+            next.set(queue.tasks.peek());
+            return next.get() == null ? null : queue;
+        });
+        return next.get();
+    }
+
+    // Принятые, но ещё не обработанные обновления (включая выполняемые сейчас)
+    public int getPendingCount() {
+        return maxPending - capacity.availablePermits();
+    }
+
+    public int getActiveChatCount() {
+        return chats.size();
+    }
+
+    public void shutdown(long timeoutSeconds) {
+        shuttingDown = true;
+        try {
+            // все разрешения вернулись - значит, ожидающих обновлений не осталось
+            if (capacity.tryAcquire(maxPending, timeoutSeconds, TimeUnit.SECONDS)) {
+                capacity.release(maxPending);
+            } else {
+                System.err.println("Не все обновления обработаны до остановки");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdownNow();
+    }
+}
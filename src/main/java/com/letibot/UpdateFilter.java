@@ -0,0 +1,147 @@
+package com.letibot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Отсев повторных нажатий до постановки обновления в очередь чата.
+// Пока команда чата (текст или кнопка) ждёт ответа, такая же команда второй раз не обрабатывается:
+// ответ на первую отвечает и на повторы. После ответа одинаковые команды ещё debounceMillis отсеиваются.
+// Кроме того, у каждого пользователя своё ведро токенов: ratePerSecond команд в секунду, burst про запас.
+// Повторы проверяются раньше ведра, поэтому лишние нажатия токены не тратят.
+public class UpdateFilter {
+
+    public enum Decision {
+        ACCEPT,
+        DUPLICATE,
+        THROTTLED
+    }
+
+    // ответ на команду так и не отметили (например, обработчик упал) - через это время она не мешает повторам
+    private static final long MAX_PENDING_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private static final class Command {
+        final long acceptedAt;
+        boolean answered;
+        long answeredAt;
+
+        Command(long acceptedAt) {
+            this.acceptedAt = acceptedAt;
+        }
+    }
+
+    // Команды чата, принятые недавно; меняются только внутри compute*
+    private static final class ChatCommands {
+        final Map<String, Command> commands = new HashMap<>();
+    }
+
+    private final long debounceNanos;
+    private final double ratePerSecond;
+    private final double burst;
+    private final ConcurrentHashMap<Long, ChatCommands> chats = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, TokenBucket> userLimits = new ConcurrentHashMap<>();
+    // обход всех чатов идёт в своём потоке, а не внутри tryAccept у случайного обновления
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "update-filter-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final String FILTERED_HELP = "Обновления, отброшенные до обработки";
+    private final LongAdder duplicateMessages = Metrics.counter("bot_updates_filtered_total", FILTERED_HELP,
+            "reason", "duplicate", "type", "message");
+    private final LongAdder duplicateCallbacks = Metrics.counter("bot_updates_filtered_total", FILTERED_HELP,
+            "reason", "duplicate", "type", "callback");
+    private final LongAdder throttledMessages = Metrics.counter("bot_updates_filtered_total", FILTERED_HELP,
+            "reason", "throttled", "type", "message");
+    private final LongAdder throttledCallbacks = Metrics.counter("bot_updates_filtered_total", FILTERED_HELP,
+            "reason", "throttled", "type", "callback");
+
+    public UpdateFilter(long debounceMillis, double ratePerSecond, double burst) {
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        cleaner.scheduleWithFixedDelay(this::cleanup, 1, 1, TimeUnit.MINUTES);
+    }
+
+    public void stop() {
+        cleaner.shutdownNow();
+    }
+
+    // ACCEPT - команду нужно обработать и по завершении вызвать completed().
+    // callback - нажатие кнопки, иначе текстовое сообщение; отброшенные считаются отдельно
+    public Decision tryAccept(long chatId, long userId, String command, boolean callback) {
+        long now = System.nanoTime();
+        Decision[] decision = new Decision[1];
+        chats.compute(chatId, (id, chat) -> {
+            if (chat == null) {
+                chat = new ChatCommands();
+            }
+            Command previous = chat.commands.get(command);
+            if (previous != null && isActive(previous, now)) {
+                decision[0] = Decision.DUPLICATE;
+                return chat;
+            }
+            TokenBucket limit = userLimits.computeIfAbsent(userId, user -> new TokenBucket(ratePerSecond, burst));
+            if (limit.tryAcquire() > 0) {
+                decision[0] = Decision.THROTTLED;
+                return chat.commands.isEmpty() ? null : chat;
+            }
+            chat.commands.put(command, new Command(now));
+            decision[0] = Decision.ACCEPT;
+            return chat;
+        });
+
+        if (decision[0] == Decision.DUPLICATE) {
+            (callback ? duplicateCallbacks : duplicateMessages).increment();
+        } else if (decision[0] == Decision.THROTTLED) {
+            (callback ? throttledCallbacks : throttledMessages).increment();
+        }
+        return decision[0];
+    }
+
+    // Ответ на команду отправлен: с этого момента отсчитывается окно debounce
+    public void completed(long chatId, String command) {
+        long now = System.nanoTime();
+        chats.computeIfPresent(chatId, (id, chat) -> {
+            Command accepted = chat.commands.get(command);
+            if (accepted != null) {
+                accepted.answered = true;
+                accepted.answeredAt = now;
+            }
+            return chat;
+        });
+    }
+
+    // Команда так и не попала в обработку: повтор должен пройти сразу
+    public void cancel(long chatId, String command) {
+        chats.computeIfPresent(chatId, (id, chat) -> {
+            chat.commands.remove(command);
+            return chat.commands.isEmpty() ? null : chat;
+        });
+    }
+
+    // Команда ещё ждёт ответа или ответили на неё меньше debounce назад
+    private boolean isActive(Command command, long now) {
+        if (!command.answered) {
+            return now - command.acceptedAt < MAX_PENDING_NANOS;
+        }
+        return now - command.answeredAt < debounceNanos;
+    }
+
+    // Раз в минуту: забываем ответы старше окна, пустые чаты и полные вёдра, иначе карты растут бесконечно
+    private void cleanup() {
+        long now = System.nanoTime();
+        for (Long chatId : chats.keySet()) {
+            chats.computeIfPresent(chatId, (id, chat) -> {
+                chat.commands.values().removeIf(command -> !isActive(command, now));
+                return chat.commands.isEmpty() ? null : chat;
+            });
+        }
+        userLimits.values().removeIf(TokenBucket::isFull);
+    }
+}
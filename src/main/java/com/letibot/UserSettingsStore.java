@@ -0,0 +1,13 @@
+package com.letibot;
+
+// Хранилище настроек пользователей (пока только номер группы)
+public interface UserSettingsStore {
+
+    String getUserGroup(long userId);
+
+    void setUserGroup(long userId, String groupNumber);
+
+    // Дописывает незавершённые изменения; вызывается при остановке бота
+    default void close() {
+    }
+}
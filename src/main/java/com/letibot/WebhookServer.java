@@ -0,0 +1,135 @@
+package com.letibot;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Приём обновлений через вебхук на встроенном HTTP-сервере JDK.
+// Telegram получает 200 сразу после чтения тела, а само обновление уходит
+// в тот же обработчик, что и при long polling.
+// Запросы без секрета, переданного Telegram при регистрации, отклоняются; без секрета сервер не запускается.
+public class WebhookServer {
+
+    // допустимые символы secret_token в Bot API
+    private static final Pattern SECRET_TOKEN = Pattern.compile("[A-Za-z0-9_-]{1,256}");
+
+    private final LetiScheduleBot bot;
+    private final String path;
+    private final String secretToken;
+    private final int maxBodyBytes;
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ExecutorService workers;
+    private final HttpServer server;
+
+    public WebhookServer(LetiScheduleBot bot, String host, int port, String path, String secretToken,
+                         int workerThreads, int maxBodyBytes) throws IOException {
+        if (!isSecretTokenValid(secretToken)) {
+            throw new IllegalArgumentException("webhook.secret должен быть задан: 1-256 символов A-Z, a-z, 0-9, _ и -");
+        }
+        this.bot = bot;
+        this.path = path;
+        this.secretToken = secretToken;
+        this.maxBodyBytes = maxBodyBytes;
+        this.workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "webhook-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.server.createContext(path, this::handle);
+        this.server.setExecutor(workers);
+    }
+
+    public static boolean isSecretTokenValid(String secretToken) {
+        return SECRET_TOKEN.matcher(secretToken).matches();
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Вебхук слушает " + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + ", путь " + path);
+    }
+
+    // Сообщает Telegram адрес, на который нужно присылать обновления
+    public void register(String publicUrl, int maxConnections) throws TelegramApiException {
+        SetWebhook setWebhook = new SetWebhook(publicUrl);
+        setWebhook.setMaxConnections(maxConnections);
+        setWebhook.setSecretToken(secretToken);
+        bot.execute(setWebhook);
+    }
+
+    public void stop() {
+        server.stop(1);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod()) || !path.equals(exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            if (!isSecretValid(exchange.getRequestHeaders().getFirst("X-Telegram-Bot-Api-Secret-Token"))) {
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+
+            // подтверждаем получение до обработки, чтобы Telegram не ждал ответа API расписания
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+
+            Update update = mapper.readValue(body, Update.class);
+            bot.onUpdateReceived(update);
+        } catch (IOException e) {
+            System.err.println("Вебхук: некорректный запрос: " + e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // null, если тело больше допустимого
+    private byte[] readBody(InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            if (body.size() + read > maxBodyBytes) {
+                return null;
+            }
+            body.write(buffer, 0, read);
+        }
+        return body.toByteArray();
+    }
+
+    private boolean isSecretValid(String header) {
+        return header != null && MessageDigest.isEqual(
+                secretToken.getBytes(StandardCharsets.UTF_8), header.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,43 @@
+package com.letibot;
+
+// Чётность недели из поля "week" в ответе API
+public enum WeekParity {
+    ODD("1", "(Нечётная неделя)"),
+    EVEN("2", "(Чётная неделя)"),
+    BOTH("3", "(Все недели)"),
+    ANY("", "");
+
+    private final String code;
+    private final String description;
+
+    WeekParity(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Название текущей недели: "нечётная" или "чётная"
+    public String getTitle() {
+        return this == EVEN ? "чётная" : "нечётная";
+    }
+
+    public boolean matches(WeekParity currentWeek) {
+        return this == ANY || this == BOTH || this == currentWeek;
+    }
+
+    public static WeekParity fromCode(String code) {
+        switch (code) {
+            case "1": return ODD;
+            case "2": return EVEN;
+            case "3": return BOTH;
+            default: return ANY;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Переходы CLOSED -> OPEN -> HALF_OPEN -> CLOSED/OPEN на подставных часах: пороги, minCalls, лимит проб
+class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private long now = 1_000_000_000L;
+
+    // окно 10, не меньше 5 вызовов, ошибок 50%, медленных (от 100 мс) 60%, пауза 1 с, 3 пробы
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 10, 5, 50, 100, 60, 1000, 3, () -> now);
+
+    @Test
+    void opensOnlyAfterMinCalls() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        // все вызовы ошибочные, но их меньше minCalls
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void failureRateBelowThresholdKeepsClosed() {
+        for (int i = 0; i < 20; i++) {
+            // 40% ошибок
+            if (i % 5 >= 3) {
+                fail();
+            } else {
+                succeed(FAST);
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    // Старые ошибки выходят из окна и не складываются с новыми
+    @Test
+    void oldOutcomesLeaveWindow() {
+        for (int i = 0; i < 6; i++) {
+            succeed(FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        for (int i = 0; i < 10; i++) {
+            succeed(FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        // в окне 4 ошибки из 10, всего их было 8
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void slowCallsOpen() {
+        succeed(FAST);
+        succeed(FAST);
+        succeed(SLOW);
+        succeed(SLOW);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        // 3 медленных из 5 - ровно 60%
+        succeed(SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void openRejectsUntilPauseEnds() {
+        open();
+        advance(999);
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        advance(1);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenLetsOnlyLimitedProbesAndCloses() {
+        open();
+        advance(1000);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        // пробы кончились, пока не пришли их результаты
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess(FAST);
+        // одна ошибка из трёх - ниже порога 50%
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        // окно очищено: прежние ошибки не учитываются, снова нужно minCalls вызовов
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void failedProbesOpenAgainWithNewPause() {
+        open();
+        advance(1000);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // пауза отсчитывается от повторного размыкания
+        advance(500);
+        assertFalse(breaker.tryAcquire());
+        advance(500);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void slowProbeCountsAsFailure() {
+        open();
+        advance(1000);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(SLOW);
+        breaker.onSuccess(SLOW);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    // Несостоявшаяся проба освобождает место для следующей
+    @Test
+    void ignoredProbeFreesSlot() {
+        open();
+        advance(1000);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        assertFalse(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    // Результаты вызовов, начатых до размыкания, не продлевают и не снимают OPEN
+    @Test
+    void lateResultsWhileOpenAreIgnored() {
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+        }
+        for (int i = 0; i < 5; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        advance(600);
+        breaker.onFailure();
+        breaker.onSuccess(FAST);
+        breaker.onIgnored();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        advance(400);
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void open() {
+        for (int i = 0; i < 5; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private void fail() {
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure();
+    }
+
+    private void succeed(long durationNanos) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(durationNanos);
+    }
+
+    private void advance(long millis) {
+        now += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,206 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+// Восстановление настроек после падения: снимок + журнал, недописанный хвост, испорченная запись, повтор записи
+class FileUserSettingsStoreTest {
+
+    // запись журнала: userId (8), длина группы (2), 4 цифры группы, CRC32 (4)
+    private static final int RECORD_BYTES = 8 + 2 + 4 + 4;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void logIsReplayedAfterRestart() throws Exception {
+        Map<Long, String> expected = new HashMap<>();
+        FileUserSettingsStore store = open();
+        for (long userId = 1; userId <= 100; userId++) {
+            set(store, expected, userId, group(userId));
+        }
+        // повторные изменения: после проигрывания журнала побеждает последнее
+        for (long userId = 1; userId <= 100; userId += 3) {
+            set(store, expected, userId, "5000");
+        }
+        store.close();
+
+        assertRecovered(expected, open());
+    }
+
+    @Test
+    void tornTailIsDroppedAndTruncated() throws Exception {
+        FileUserSettingsStore store = open();
+        for (long userId = 1; userId <= 10; userId++) {
+            store.setUserGroup(userId, group(userId));
+        }
+        store.close();
+        // падение посреди последней записи
+        truncate(log(), 10L * RECORD_BYTES - 5);
+
+        FileUserSettingsStore recovered = open();
+        for (long userId = 1; userId <= 9; userId++) {
+            assertEquals(group(userId), recovered.getUserGroup(userId));
+        }
+        assertNull(recovered.getUserGroup(10));
+        assertEquals(9L * RECORD_BYTES, Files.size(log()));
+
+        // новые записи ложатся сразу за последней целой и читаются после следующего рестарта
+        recovered.setUserGroup(10, "4354");
+        recovered.close();
+        FileUserSettingsStore reopened = open();
+        assertEquals("4354", reopened.getUserGroup(10));
+        assertEquals(group(9), reopened.getUserGroup(9));
+        reopened.close();
+    }
+
+    @Test
+    void recordWithBadChecksumEndsReplay() throws Exception {
+        FileUserSettingsStore store = open();
+        for (long userId = 1; userId <= 10; userId++) {
+            store.setUserGroup(userId, group(userId));
+        }
+        store.close();
+        // портим цифру группы в шестой записи: CRC не сходится
+        try (RandomAccessFile file = new RandomAccessFile(log().toFile(), "rw")) {
+            long position = 5L * RECORD_BYTES + 8 + 2;
+            file.seek(position);
+            int digit = file.read();
+            file.seek(position);
+            file.write(digit == '9' ? '0' : digit + 1);
+        }
+
+        FileUserSettingsStore recovered = open();
+        for (long userId = 1; userId <= 5; userId++) {
+            assertEquals(group(userId), recovered.getUserGroup(userId));
+        }
+        // всё после испорченной записи ненадёжно и отбрасывается вместе с ней
+        for (long userId = 6; userId <= 10; userId++) {
+            assertNull(recovered.getUserGroup(userId));
+        }
+        assertEquals(5L * RECORD_BYTES, Files.size(log()));
+        recovered.close();
+    }
+
+    @Test
+    void snapshotAndLogAreCombined() throws Exception {
+        Map<Long, String> expected = new HashMap<>();
+        // журнал сжимается в снимок каждые 7 записей
+        FileUserSettingsStore store = open(7);
+        for (long userId = 1; userId <= 30; userId++) {
+            set(store, expected, userId, group(userId));
+        }
+        store.close();
+        assertTrue(Files.exists(directory.resolve("users.snapshot")));
+
+        // после рестарта изменения поверх снимка лежат только в журнале
+        FileUserSettingsStore restarted = open();
+        for (long userId = 1; userId <= 30; userId += 4) {
+            set(restarted, expected, userId, "5001");
+        }
+        set(restarted, expected, 31, "5002");
+        restarted.close();
+        assertTrue(Files.size(log()) >= 9L * RECORD_BYTES);
+
+        assertRecovered(expected, open());
+    }
+
+    // Пока запись невозможна, изменения ждут; когда диск снова пишется, они попадают в журнал
+    @Test
+    void failedBatchIsRetried() throws Exception {
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.isWritable(full), "нужно устройство /dev/full");
+        LongAdder errors = Metrics.counter("user_store_write_errors_total",
+                "Неудачные записи журнала настроек пользователей");
+
+        Files.createSymbolicLink(log(), full);
+        FileUserSettingsStore store = open();
+        long errorsBefore = errors.sum();
+        for (long userId = 1; userId <= 20; userId++) {
+            store.setUserGroup(userId, group(userId));
+        }
+        waitUntil(() -> errors.sum() > errorsBefore);
+
+        // место на диске появилось
+        Files.delete(log());
+        Files.createFile(log());
+        for (long userId = 21; userId <= 30; userId++) {
+            store.setUserGroup(userId, group(userId));
+        }
+        waitUntil(() -> sizeOf(log()) == 30L * RECORD_BYTES);
+        store.close();
+
+        FileUserSettingsStore recovered = open();
+        for (long userId = 1; userId <= 30; userId++) {
+            assertEquals(group(userId), recovered.getUserGroup(userId));
+        }
+        recovered.close();
+    }
+
+    private FileUserSettingsStore open() throws Exception {
+        return open(1_000_000);
+    }
+
+    private FileUserSettingsStore open(long compactEvery) throws Exception {
+        return new FileUserSettingsStore(directory, compactEvery, false);
+    }
+
+    private Path log() {
+        return directory.resolve("users.log");
+    }
+
+    private static void set(FileUserSettingsStore store, Map<Long, String> expected, long userId, String group) {
+        store.setUserGroup(userId, group);
+        expected.put(userId, group);
+    }
+
+    private static void assertRecovered(Map<Long, String> expected, FileUserSettingsStore recovered) {
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), recovered.getUserGroup(entry.getKey()), "пользователь " + entry.getKey());
+        }
+        assertNull(recovered.getUserGroup(expected.size() + 1000));
+        recovered.close();
+    }
+
+    private static String group(long userId) {
+        return String.valueOf(4000 + userId);
+    }
+
+    private static void truncate(Path file, long length) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(length);
+        }
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+        while (!condition.holds()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 20 с");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Поиск ближайшего занятия по индексу сверяется с перебором дней вперёд:
+// переходы через полночь, конец недели со сменой чётности и конец двухнедельного цикла
+class LessonTimelineTest {
+
+    // Понедельник: занятие в 00:00 по нечётным и два занятия в одно время каждую неделю.
+    // Среда: только чётные. Суббота: 23:59 по нечётным. Воскресенье и остальные дни пустые
+    private static final GroupSchedule SCHEDULE = schedule();
+
+    // Ожидаемое занятие: день недели, номер в списке дня и через сколько секунд начнётся
+    private static final class Found {
+        final int day;
+        final int lesson;
+        final int seconds;
+
+        Found(int day, int lesson, int seconds) {
+            this.day = day;
+            this.lesson = lesson;
+            this.seconds = seconds;
+        }
+    }
+
+    @Test
+    void randomPointsMatchBruteForce() {
+        LessonTimeline timeline = LessonTimeline.build(SCHEDULE);
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            int day = random.nextInt(GroupSchedule.DAYS_IN_WEEK);
+            int second = random.nextInt(LessonTimeline.SECONDS_PER_DAY);
+            WeekParity parity = random.nextBoolean() ? WeekParity.ODD : WeekParity.EVEN;
+            assertMatches(timeline, day, second, parity);
+        }
+    }
+
+    // Каждое начало занятия, секунда до и после, а также последняя и первая секунды каждого дня
+    @Test
+    void boundariesMatchBruteForce() {
+        LessonTimeline timeline = LessonTimeline.build(SCHEDULE);
+        for (WeekParity parity : new WeekParity[]{WeekParity.ODD, WeekParity.EVEN}) {
+            for (int day = 0; day < GroupSchedule.DAYS_IN_WEEK; day++) {
+                assertMatches(timeline, day, 0, parity);
+                assertMatches(timeline, day, LessonTimeline.SECONDS_PER_DAY - 1, parity);
+                DaySchedule daySchedule = SCHEDULE.getDay(day);
+                if (daySchedule == null) {
+                    continue;
+                }
+                for (Lesson lesson : daySchedule.getLessons()) {
+                    int start = lesson.getStartTime().toSecondOfDay();
+                    for (int second = start - 1; second <= start + 1; second++) {
+                        if (second >= 0 && second < LessonTimeline.SECONDS_PER_DAY) {
+                            assertMatches(timeline, day, second, parity);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Из воскресенья нечётной недели - в понедельник чётной: ночное занятие только по нечётным и пропускается
+    @Test
+    void weekWrapSwitchesParity() {
+        LessonTimeline timeline = LessonTimeline.build(SCHEDULE);
+        int sunday = LessonTimeline.cyclePosition(6, 12 * 3600, WeekParity.ODD);
+        int index = timeline.indexAt(sunday);
+        assertEquals(0, timeline.getDayIndex(index));
+        assertEquals("Программирование", timeline.getLesson(index).getName());
+        assertEquals(12 * 3600 + (9 * 60 + 50) * 60, timeline.secondsUntil(index, sunday));
+
+        // конец цикла: из воскресенья чётной недели - в понедельник 00:00 нечётной
+        int evenSunday = LessonTimeline.cyclePosition(6, LessonTimeline.SECONDS_PER_DAY - 1, WeekParity.EVEN);
+        index = timeline.indexAt(evenSunday);
+        assertEquals(0, timeline.getStart(index));
+        assertEquals("Ночная", timeline.getLesson(index).getName());
+        assertEquals(1, timeline.secondsUntil(index, evenSunday));
+    }
+
+    // Два занятия в одно время: индекс указывает на первое по расписанию, next - на второе
+    @Test
+    void simultaneousLessonsKeepScheduleOrder() {
+        LessonTimeline timeline = LessonTimeline.build(SCHEDULE);
+        int index = timeline.indexAt(LessonTimeline.cyclePosition(0, (9 * 60 + 50) * 60, WeekParity.EVEN));
+        assertEquals("Программирование", timeline.getLesson(index).getName());
+        assertEquals("Физкультура", timeline.getLesson(timeline.next(index)).getName());
+    }
+
+    // Занятия только по чётным: из нечётной недели ждать больше недели
+    @Test
+    void lessonsOfOneParityOnly() {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        days[2] = new DaySchedule(2, "Среда", List.of(lesson("13:40", "Лабораторная", WeekParity.EVEN)));
+        LessonTimeline timeline = LessonTimeline.build(new GroupSchedule("4354", days, 0));
+        assertEquals(1, timeline.size());
+
+        int oddThursday = LessonTimeline.cyclePosition(3, 0, WeekParity.ODD);
+        int index = timeline.indexAt(oddThursday);
+        assertEquals(6 * LessonTimeline.SECONDS_PER_DAY + (13 * 60 + 40) * 60, timeline.secondsUntil(index, oddThursday));
+        assertEquals(index, timeline.next(index));
+    }
+
+    @Test
+    void emptyScheduleHasNoLessons() {
+        LessonTimeline timeline = LessonTimeline.build(
+                new GroupSchedule("4354", new DaySchedule[GroupSchedule.DAYS_IN_WEEK], 0));
+        assertTrue(timeline.isEmpty());
+        assertEquals(-1, timeline.indexAt(0));
+        assertEquals(-1, timeline.next(0));
+    }
+
+    private static void assertMatches(LessonTimeline timeline, int day, int second, WeekParity parity) {
+        int position = LessonTimeline.cyclePosition(day, second, parity);
+        int index = timeline.indexAt(position);
+        Found expected = bruteForce(day, second, parity);
+        String point = "день " + day + ", секунда " + second + ", неделя " + parity;
+        assertEquals(expected.day, timeline.getDayIndex(index), point);
+        assertEquals(expected.lesson, timeline.getLessonIndex(index), point);
+        assertEquals(expected.seconds, timeline.secondsUntil(index, position), point);
+    }
+
+    // Перебор дней вперёд с чередованием чётности; в каждом дне - самое раннее подходящее занятие
+    private static Found bruteForce(int day, int second, WeekParity parity) {
+        for (int ahead = 0; ahead <= LessonTimeline.CYCLE_DAYS; ahead++) {
+            int dayIndex = (day + ahead) % GroupSchedule.DAYS_IN_WEEK;
+            boolean sameWeek = (day + ahead) / GroupSchedule.DAYS_IN_WEEK % 2 == 0;
+            WeekParity week = sameWeek ? parity : parity == WeekParity.ODD ? WeekParity.EVEN : WeekParity.ODD;
+            DaySchedule daySchedule = SCHEDULE.getDay(dayIndex);
+            if (daySchedule == null) {
+                continue;
+            }
+            int best = -1;
+            int bestStart = Integer.MAX_VALUE;
+            List<Lesson> lessons = daySchedule.getLessons();
+            for (int i = 0; i < lessons.size(); i++) {
+                Lesson lesson = lessons.get(i);
+                int start = lesson.getStartTime().toSecondOfDay();
+                if (!lesson.getWeek().matches(week) || (ahead == 0 && start < second)) {
+                    continue;
+                }
+                if (start < bestStart) {
+                    bestStart = start;
+                    best = i;
+                }
+            }
+            if (best >= 0) {
+                return new Found(dayIndex, best, ahead * LessonTimeline.SECONDS_PER_DAY + bestStart - second);
+            }
+        }
+        throw new AssertionError("Занятий нет");
+    }
+
+    private static GroupSchedule schedule() {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        days[0] = new DaySchedule(0, "Понедельник", new ArrayList<>(List.of(
+                lesson("00:00", "Ночная", WeekParity.ODD),
+                lesson("09:50", "Программирование", WeekParity.BOTH),
+                lesson("09:50", "Физкультура", WeekParity.ANY),
+                lesson("15:30", "Физика", WeekParity.EVEN))));
+        days[2] = new DaySchedule(2, "Среда", List.of(
+                lesson("13:40", "Лабораторная", WeekParity.EVEN),
+                lesson("08:00", "Матанализ", WeekParity.EVEN)));
+        days[5] = new DaySchedule(5, "Суббота", List.of(lesson("23:59", "Поздняя", WeekParity.ODD)));
+        return new GroupSchedule("4354", days, 0);
+    }
+
+    private static Lesson lesson(String start, String name, WeekParity week) {
+        return new Lesson(start, start, name, "Лек", "", "101", "", week);
+    }
+}
@@ -0,0 +1,177 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Сегментированная таблица с открытой адресацией сверяется с HashMap: рост таблиц, ключ 0, параллельные чтения
+class LongIntMapTest {
+
+    @Test
+    void randomOperationsMatchHashMap() {
+        // маленькие сегменты: таблицы растут много раз
+        LongIntMap map = new LongIntMap(4, 16);
+        Map<Long, Integer> oracle = new HashMap<>();
+        Random random = new Random(42);
+        long[] special = {0L, -1L, 1L, Long.MIN_VALUE, Long.MAX_VALUE};
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = random.nextInt(10) == 0 ? special[random.nextInt(special.length)]
+                    : random.nextInt(50_000) - 25_000L;
+            if (random.nextBoolean()) {
+                int value = random.nextInt(10_000);
+                Integer previous = oracle.put(key, value);
+                assertEquals(previous != null ? previous : LongIntMap.NO_VALUE, map.put(key, value));
+            } else {
+                Integer expected = oracle.get(key);
+                assertEquals(expected != null ? expected : LongIntMap.NO_VALUE, map.get(key));
+            }
+        }
+        assertSameContent(oracle, map);
+    }
+
+    @Test
+    void growsFromMinimalCapacity() {
+        LongIntMap map = new LongIntMap(1, 1);
+        Map<Long, Integer> oracle = new HashMap<>();
+        long before = map.footprintBytes();
+        for (long key = 1; key <= 100_000; key++) {
+            // ключи подряд и с общими младшими битами
+            long spread = key << 20;
+            map.put(spread, (int) key);
+            oracle.put(spread, (int) key);
+        }
+        assertTrue(map.footprintBytes() > before);
+        // заполнение не выше 60%: 12 байт на ячейку, не меньше 20 байт на ключ
+        assertTrue(map.footprintBytes() >= 20L * map.size());
+        assertSameContent(oracle, map);
+    }
+
+    @Test
+    void zeroKeyIsStoredSeparately() {
+        LongIntMap map = new LongIntMap();
+        assertEquals(LongIntMap.NO_VALUE, map.get(0));
+        assertEquals(LongIntMap.NO_VALUE, map.put(0, 7));
+        assertEquals(7, map.get(0));
+        assertEquals(7, map.put(0, 8));
+        assertEquals(1, map.size());
+
+        map.put(1, 1);
+        assertEquals(8, map.get(0));
+        assertEquals(2, map.size());
+        Map<Long, Integer> seen = new HashMap<>();
+        map.forEach(seen::put);
+        assertEquals(Map.of(0L, 8, 1L, 1), seen);
+    }
+
+    // Каждый писатель ведёт свои ключи и только увеличивает их значения; читатели, обгоняя рост таблиц,
+    // должны видеть только записанные значения и никогда - откат к более старому
+    @Test
+    void concurrentWritesAndOptimisticReads() throws Exception {
+        int writers = 4;
+        int readers = 4;
+        int keysPerWriter = 20_000;
+        int rounds = 5;
+        LongIntMap map = new LongIntMap(8, 16);
+        ExecutorService pool = Executors.newFixedThreadPool(writers + readers);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Future<?>> writes = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            writes.add(pool.submit(() -> {
+                await(start);
+                for (int round = 1; round <= rounds; round++) {
+                    for (int i = 0; i < keysPerWriter; i++) {
+                        long key = key(writer, i);
+                        map.put(key, value(key, round));
+                    }
+                }
+                return null;
+            }));
+        }
+        List<Future<?>> reads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            long seed = r;
+            reads.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                int[] lastRound = new int[writers * keysPerWriter];
+                await(start);
+                while (writing.get()) {
+                    int writer = random.nextInt(writers);
+                    int i = random.nextInt(keysPerWriter);
+                    long key = key(writer, i);
+                    int value = map.get(key);
+                    if (value == LongIntMap.NO_VALUE) {
+                        assertEquals(0, lastRound[writer * keysPerWriter + i], "ключ " + key + " пропал");
+                        continue;
+                    }
+                    int round = value / 1000;
+                    assertEquals(value(key, round), value, "чужое значение у ключа " + key);
+                    assertTrue(round >= lastRound[writer * keysPerWriter + i], "откат значения у ключа " + key);
+                    lastRound[writer * keysPerWriter + i] = round;
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> write : writes) {
+            write.get(60, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        for (Future<?> read : reads) {
+            read.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        Map<Long, Integer> oracle = new HashMap<>();
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < keysPerWriter; i++) {
+                oracle.put(key(w, i), value(key(w, i), rounds));
+            }
+        }
+        assertSameContent(oracle, map);
+    }
+
+    // ключи разных писателей чередуются и попадают в одни сегменты
+    private static long key(int writer, int index) {
+        return 1 + (long) index * 64 + writer;
+    }
+
+    // номер раунда в старших разрядах, остаток от ключа - в младших
+    private static int value(long key, int round) {
+        return round * 1000 + (int) (key % 1000);
+    }
+
+    private static void assertSameContent(Map<Long, Integer> oracle, LongIntMap map) {
+        assertEquals(oracle.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : oracle.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()), "ключ " + entry.getKey());
+        }
+        Map<Long, Integer> seen = new HashMap<>();
+        map.forEach((key, value) -> assertNull(seen.put(key, value), "ключ " + key + " встретился дважды"));
+        assertEquals(oracle, seen);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.letibot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.methods.BotApiMethod;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updatingmessages.EditMessageText;
+import org.telegram.telegrambots.meta.api.objects.ApiResponse;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Отправка через подставной транспорт: 429, порядок сообщений чата, повторы только без риска дублей
+class OutboundSenderTest {
+
+    private static final long GROUP_CHAT = -1001;
+    private static final long PRIVATE_CHAT = 1001;
+    private static final long OTHER_CHAT = 1002;
+
+    // Подставной Telegram: запоминает доставленные тексты, на заданные тексты отвечает ошибками по очереди
+    private static final class FakeTransport implements OutboundSender.Transport {
+        final List<String> delivered = new ArrayList<>();
+        final List<Long> deliveredAt = new ArrayList<>();
+        final Map<String, List<TelegramApiException>> failures = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        volatile long lastFailureAt;
+
+        @Override
+        public void send(BotApiMethod<? extends Serializable> method) throws TelegramApiException {
+            String text = method instanceof SendMessage ? ((SendMessage) method).getText()
+                    : ((EditMessageText) method).getText();
+            calls.computeIfAbsent(text, t -> new AtomicInteger()).incrementAndGet();
+            List<TelegramApiException> planned = failures.get(text);
+            if (planned != null) {
+                synchronized (planned) {
+                    if (!planned.isEmpty()) {
+                        lastFailureAt = System.nanoTime();
+                        throw planned.remove(0);
+                    }
+                }
+            }
+            synchronized (this) {
+                delivered.add(text);
+                deliveredAt.add(System.nanoTime());
+            }
+        }
+
+        void fail(String text, TelegramApiException... errors) {
+            failures.put(text, new ArrayList<>(List.of(errors)));
+        }
+
+        int calls(String text) {
+            AtomicInteger count = calls.get(text);
+            return count == null ? 0 : count.get();
+        }
+
+        synchronized List<String> delivered() {
+            return new ArrayList<>(delivered);
+        }
+
+        synchronized long deliveredAt(String text) {
+            return deliveredAt.get(delivered.indexOf(text));
+        }
+    }
+
+    private final FakeTransport transport = new FakeTransport();
+    // лимиты с запасом: проверяется реакция на ответы Telegram, а не вёдра
+    private final OutboundSender sender = new OutboundSender(transport, 4, 100, 1000, 1000, 100);
+
+    @AfterEach
+    void shutdown() {
+        sender.shutdown(1);
+    }
+
+    @Test
+    void tooManyRequestsInGroupDelaysOnlyThatChatAndKeepsItsOrder() throws Exception {
+        transport.fail("a1", tooManyRequests(1));
+        send(GROUP_CHAT, "a1");
+        send(GROUP_CHAT, "a2");
+        send(GROUP_CHAT, "a3");
+        waitUntil(() -> transport.lastFailureAt != 0);
+        send(OTHER_CHAT, "b1");
+
+        waitUntil(() -> transport.delivered().size() == 4);
+        List<String> delivered = transport.delivered();
+        // другой чат не ждал повтора
+        assertEquals("b1", delivered.get(0));
+        assertEquals(List.of("a1", "a2", "a3"), delivered.subList(1, 4));
+        assertTrue(transport.deliveredAt("a1") - transport.lastFailureAt >= TimeUnit.MILLISECONDS.toNanos(950));
+        assertEquals(2, transport.calls("a1"));
+        assertEquals(1, transport.calls("a2"));
+        assertEquals(1, sender.getRetriedCount());
+        assertEquals(0, sender.getFailedCount());
+    }
+
+    // 429 в личном чате - общий лимит бота: на retry_after встают все чаты
+    @Test
+    void tooManyRequestsInPrivateChatPausesAllChats() throws Exception {
+        transport.fail("p1", tooManyRequests(1));
+        send(PRIVATE_CHAT, "p1");
+        waitUntil(() -> transport.lastFailureAt != 0);
+        send(OTHER_CHAT, "b1");
+
+        waitUntil(() -> transport.delivered().size() == 2);
+        assertTrue(transport.deliveredAt("b1") - transport.lastFailureAt >= TimeUnit.MILLISECONDS.toNanos(950));
+        assertEquals(1, sender.getRetriedCount());
+    }
+
+    // После таймаута новое сообщение могло уже прийти: не повторяем. Отказ в соединении и правку - повторяем
+    @Test
+    void networkErrorsAreRetriedOnlyWithoutRiskOfDuplicates() throws Exception {
+        transport.fail("timeout", new TelegramApiException("Unable to execute", new SocketTimeoutException("Read timed out")));
+        transport.fail("refused", new TelegramApiException("Unable to execute", new ConnectException("Connection refused")));
+        transport.fail("edit", new TelegramApiException("Unable to execute", new SocketTimeoutException("Read timed out")));
+        send(PRIVATE_CHAT, "timeout");
+        send(OTHER_CHAT, "refused");
+        EditMessageText edit = new EditMessageText();
+        edit.setChatId(String.valueOf(GROUP_CHAT));
+        edit.setMessageId(1);
+        edit.setText("edit");
+        assertTrue(sender.send(edit, GROUP_CHAT, OutboundSender.Priority.INTERACTIVE));
+
+        waitUntil(() -> transport.delivered().size() == 2 && sender.getFailedCount() == 1);
+        assertEquals(1, transport.calls("timeout"));
+        assertFalse(transport.delivered().contains("timeout"));
+        assertEquals(2, transport.calls("refused"));
+        assertEquals(2, transport.calls("edit"));
+        assertEquals(2, sender.getRetriedCount());
+        assertEquals(0, sender.getQueueDepth());
+    }
+
+    // Чат ждёт окончательного исхода своего сообщения, даже если оно так и не ушло
+    @Test
+    void chatContinuesAfterFinalFailure() throws Exception {
+        transport.fail("a1", tooManyRequests(0), tooManyRequests(0), tooManyRequests(0));
+        send(GROUP_CHAT, "a1");
+        send(GROUP_CHAT, "a2");
+
+        waitUntil(() -> transport.delivered().size() == 1);
+        assertEquals(List.of("a2"), transport.delivered());
+        assertEquals(3, transport.calls("a1"));
+        assertEquals(1, sender.getFailedCount());
+        waitUntil(() -> sender.getQueueDepth() == 0);
+    }
+
+    private void send(long chatId, String text) {
+        SendMessage message = new SendMessage();
+        message.setChatId(String.valueOf(chatId));
+        message.setText(text);
+        assertTrue(sender.send(message, chatId, OutboundSender.Priority.INTERACTIVE));
+    }
+
+    private static TelegramApiRequestException tooManyRequests(int retryAfter) throws Exception {
+        ApiResponse<?> response = new ObjectMapper().readValue("{\"ok\":false,\"error_code\":429,"
+                + "\"description\":\"Too Many Requests: retry after " + retryAfter + "\","
+                + "\"parameters\":{\"retry_after\":" + retryAfter + "}}", ApiResponse.class);
+        return new TelegramApiRequestException("Error sending message", response);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.holds()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 с");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+import org.telegram.telegrambots.meta.api.objects.replykeyboard.buttons.InlineKeyboardButton;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Экраны с чётностью: показываются только занятия этой недели, заголовок называет её саму
+class ParityViewTest {
+
+    // Понедельник: матанализ по нечётным, физика по чётным, программирование каждую неделю.
+    // Среда: лабораторная только по чётным
+    private static final GroupSchedule SCHEDULE = schedule();
+
+    @Test
+    void dayShowsOnlyLessonsOfViewedWeek() {
+        String odd = ScheduleFetcher.renderDay(SCHEDULE, 0, WeekParity.ODD, true);
+        assertTrue(odd.contains("Матанализ"));
+        assertTrue(odd.contains("Программирование"));
+        assertFalse(odd.contains("Физика"));
+
+        String even = ScheduleFetcher.renderDay(SCHEDULE, 0, WeekParity.EVEN, true);
+        assertTrue(even.contains("Физика"));
+        assertTrue(even.contains("Программирование"));
+        assertFalse(even.contains("Матанализ"));
+    }
+
+    @Test
+    void dayWithoutLessonsOfViewedWeekIsEmpty() {
+        assertEquals("В этот день занятий нет.", ScheduleFetcher.renderDay(SCHEDULE, 2, WeekParity.ODD, true));
+        assertTrue(ScheduleFetcher.renderDay(SCHEDULE, 2, WeekParity.EVEN, true).contains("Лабораторная"));
+    }
+
+    @Test
+    void weekShowsOnlyLessonsOfViewedWeek() {
+        String odd = ScheduleFetcher.renderWeek(SCHEDULE, WeekParity.ODD, true);
+        assertTrue(odd.contains("Матанализ"));
+        assertFalse(odd.contains("Физика"));
+        assertFalse(odd.contains("Среда"));
+
+        String even = ScheduleFetcher.renderWeek(SCHEDULE, WeekParity.EVEN, true);
+        assertTrue(even.contains("Физика"));
+        assertTrue(even.contains("Среда"));
+        assertFalse(even.contains("Матанализ"));
+    }
+
+    @Test
+    void headerNamesViewedWeek() {
+        assertTrue(ScheduleFetcher.renderDay(SCHEDULE, 0, WeekParity.EVEN, true)
+                .startsWith("*Текущая неделя:* чётная\n"));
+        assertTrue(ScheduleFetcher.renderDay(SCHEDULE, 0, WeekParity.EVEN, false)
+                .startsWith("*Неделя:* чётная\n"));
+        assertTrue(ScheduleFetcher.renderWeek(SCHEDULE, WeekParity.ODD, false)
+                .startsWith("*Неделя:* нечётная\n"));
+    }
+
+    // Нажатие кнопки другой недели на экране понедельника и обратно
+    @Test
+    void toggleSwitchesLessonsAndHeader() {
+        WeekParity current = ScheduleFetcher.currentWeekParity();
+        WeekParity other = current == WeekParity.EVEN ? WeekParity.ODD : WeekParity.EVEN;
+
+        ScheduleView monday = ScheduleView.parse("d0" + current.getCode());
+        String text = monday.render(SCHEDULE);
+        assertLessonsOf(current, text);
+        assertTrue(text.startsWith("*Текущая неделя:* " + current.getTitle() + "\n"));
+
+        ScheduleView toggled = ScheduleView.parse(toggleData(monday, text));
+        String toggledText = toggled.render(SCHEDULE);
+        assertLessonsOf(other, toggledText);
+        assertTrue(toggledText.startsWith("*Неделя:* " + other.getTitle() + "\n"));
+
+        String back = ScheduleView.parse(toggleData(toggled, toggledText)).render(SCHEDULE);
+        assertEquals(text, back);
+    }
+
+    private static void assertLessonsOf(WeekParity parity, String text) {
+        assertEquals(parity == WeekParity.ODD, text.contains("Матанализ"), text);
+        assertEquals(parity == WeekParity.EVEN, text.contains("Физика"), text);
+        assertTrue(text.contains("Программирование"), text);
+    }
+
+    // callback_data кнопки "Чётная/Нечётная неделя" под экраном
+    private static String toggleData(ScheduleView view, String text) {
+        List<List<InlineKeyboardButton>> rows = view.keyboard(view.hash(text)).getKeyboard();
+        for (List<InlineKeyboardButton> row : rows) {
+            for (InlineKeyboardButton button : row) {
+                if (button.getText().endsWith(" неделя")) {
+                    return button.getCallbackData();
+                }
+            }
+        }
+        throw new AssertionError("Нет кнопки другой недели");
+    }
+
+    private static GroupSchedule schedule() {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        days[0] = new DaySchedule(0, "Понедельник", List.of(
+                new Lesson("09:50", "11:20", "Матанализ", "Лек", "", "5427", "", WeekParity.ODD),
+                new Lesson("09:50", "11:20", "Физика", "Лек", "", "1229", "", WeekParity.EVEN),
+                new Lesson("11:40", "13:10", "Программирование", "Пр", "", "3401", "", WeekParity.BOTH)));
+        days[2] = new DaySchedule(2, "Среда", List.of(
+                new Lesson("13:40", "15:10", "Лабораторная", "Лаб", "", "2201", "", WeekParity.EVEN)));
+        return new GroupSchedule("4354", days, System.currentTimeMillis());
+    }
+}
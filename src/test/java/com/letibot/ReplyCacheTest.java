@@ -0,0 +1,60 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Кэш готовых ответов: при переполнении уходит одна давно не нужная запись, а не весь кэш
+class ReplyCacheTest {
+
+    @Test
+    void overflowEvictsLeastRecentlyUsedOnly() {
+        ReplyCache cache = new ReplyCache(3);
+        AtomicInteger renders = new AtomicInteger();
+        GroupSchedule hot = schedule("1000");
+
+        cache.get(hot, "day0", WeekParity.ODD, () -> render(renders, "hot"));
+        for (int i = 0; i < 10; i++) {
+            // горячая группа запрашивается между холодными и не вытесняется
+            cache.get(hot, "day0", WeekParity.ODD, () -> render(renders, "hot"));
+            cache.get(schedule(String.valueOf(2000 + i)), "day0", WeekParity.ODD, () -> render(renders, "cold"));
+        }
+        assertEquals(11, renders.get());
+
+        // две последние холодные группы ещё в кэше, более ранние вытеснены
+        cache.get(schedule("2009"), "day0", WeekParity.ODD, () -> render(renders, "cold"));
+        cache.get(schedule("2008"), "day0", WeekParity.ODD, () -> render(renders, "cold"));
+        assertEquals(11, renders.get());
+        cache.get(schedule("2000"), "day0", WeekParity.ODD, () -> render(renders, "cold"));
+        assertEquals(12, renders.get());
+    }
+
+    @Test
+    void changedScheduleIsRenderedAgain() {
+        ReplyCache cache = new ReplyCache(10);
+        AtomicInteger renders = new AtomicInteger();
+        assertEquals("v1", cache.get(schedule("1000", "Матанализ"), "week", WeekParity.EVEN, () -> render(renders, "v1")));
+        assertEquals("v1", cache.get(schedule("1000", "Матанализ"), "week", WeekParity.EVEN, () -> render(renders, "v1")));
+        assertEquals("v2", cache.get(schedule("1000", "Физика"), "week", WeekParity.EVEN, () -> render(renders, "v2")));
+        assertEquals(2, renders.get());
+    }
+
+    private static String render(AtomicInteger renders, String text) {
+        renders.incrementAndGet();
+        return text;
+    }
+
+    private static GroupSchedule schedule(String groupNumber) {
+        return schedule(groupNumber, "Матанализ");
+    }
+
+    private static GroupSchedule schedule(String groupNumber, String subject) {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        days[0] = new DaySchedule(0, "Понедельник", List.of(
+                new Lesson("09:50", "11:20", subject, "Лек", "", "5427", "", WeekParity.BOTH)));
+        return new GroupSchedule(groupNumber, days, System.currentTimeMillis());
+    }
+}
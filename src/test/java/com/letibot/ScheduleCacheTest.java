@@ -0,0 +1,252 @@
+package com.letibot;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Кэш расписаний: одна загрузка на всех ждущих, фоновое обновление устаревших записей, запасная версия при сбое API
+class ScheduleCacheTest {
+
+    private static final long TTL_SECONDS = 60;
+    private static final long STALE_SECONDS = 600;
+
+    // Загрузчик, которым управляет тест: каждый вызов запоминается, будущие завершаются вручную
+    private static final class ManualLoader implements ScheduleCache.Loader {
+        final List<CompletableFuture<GroupSchedule>> loads = new ArrayList<>();
+        final List<GroupSchedule> previous = new ArrayList<>();
+        // ответ на пакет; null - пакеты не поддерживаются вовсе
+        volatile Map<String, GroupSchedule> batchAnswer;
+        int batchCalls;
+
+        @Override
+        public synchronized CompletableFuture<GroupSchedule> load(String groupNumber, GroupSchedule previous) {
+            CompletableFuture<GroupSchedule> load = new CompletableFuture<>();
+            this.loads.add(load);
+            this.previous.add(previous);
+            return load;
+        }
+
+        @Override
+        public synchronized CompletableFuture<Map<String, GroupSchedule>> loadAll(List<String> groupNumbers) {
+            batchCalls++;
+            return batchAnswer != null ? CompletableFuture.completedFuture(batchAnswer)
+                    : CompletableFuture.failedFuture(new UnsupportedOperationException());
+        }
+
+        synchronized int calls() {
+            return loads.size();
+        }
+
+        synchronized CompletableFuture<GroupSchedule> last() {
+            return loads.get(loads.size() - 1);
+        }
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+
+        int callers = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<CompletableFuture<GroupSchedule>>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            results.add(CompletableFuture.supplyAsync(() -> {
+                await(start);
+                return cache.getAsync("4354");
+            }, pool));
+        }
+        start.countDown();
+        List<CompletableFuture<GroupSchedule>> waiting = new ArrayList<>();
+        for (CompletableFuture<CompletableFuture<GroupSchedule>> result : results) {
+            waiting.add(result.get(5, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+
+        assertEquals(1, loader.calls());
+        for (CompletableFuture<GroupSchedule> future : waiting) {
+            assertFalse(future.isDone());
+        }
+
+        GroupSchedule loaded = schedule("4354", System.currentTimeMillis(), "Матанализ");
+        loader.last().complete(loaded);
+        for (CompletableFuture<GroupSchedule> future : waiting) {
+            assertSame(loaded, future.get(5, TimeUnit.SECONDS));
+        }
+        // загрузка завершилась: следующий промах после ttl снова пойдёт в API, а пока отдаётся кэш
+        assertSame(loaded, cache.get("4354"));
+        assertEquals(1, loader.calls());
+    }
+
+    // Отмена будущего одним вызывающим не отменяет загрузку для остальных
+    @Test
+    void cancelledCallerDoesNotCancelLoad() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+
+        CompletableFuture<GroupSchedule> first = cache.getAsync("4354");
+        CompletableFuture<GroupSchedule> second = cache.getAsync("4354");
+        first.cancel(true);
+
+        GroupSchedule loaded = schedule("4354", System.currentTimeMillis(), "Матанализ");
+        loader.last().complete(loaded);
+        assertSame(loaded, second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.calls());
+    }
+
+    @Test
+    void staleEntryIsServedWhileRefreshing() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+        GroupSchedule stale = schedule("4354", ageSeconds(TTL_SECONDS + 30), "Матанализ");
+        cache.restore(List.of(stale));
+
+        CompletableFuture<GroupSchedule> served = cache.getAsync("4354");
+        assertTrue(served.isDone());
+        assertSame(stale, served.get());
+        assertEquals(1, loader.calls());
+        // обновление условное: загрузчик получает текущую версию
+        assertSame(stale, loader.previous.get(0));
+
+        // пока обновление в пути, повторные обращения его не дублируют
+        assertSame(stale, cache.get("4354"));
+        assertEquals(1, loader.calls());
+
+        GroupSchedule fresh = schedule("4354", System.currentTimeMillis(), "Физика");
+        loader.last().complete(fresh);
+        assertSame(fresh, cache.get("4354"));
+        assertEquals(1, loader.calls());
+    }
+
+    @Test
+    void failedRefreshOfStaleEntryKeepsIt() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+        GroupSchedule stale = schedule("4354", ageSeconds(TTL_SECONDS + 30), "Матанализ");
+        cache.restore(List.of(stale));
+
+        assertSame(stale, cache.get("4354"));
+        loader.last().completeExceptionally(new IOException("API недоступно"));
+        assertSame(stale, cache.peek("4354"));
+    }
+
+    @Test
+    void expiredEntryIsFallbackWhenLoaderFails() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+        GroupSchedule expired = schedule("4354", ageSeconds(TTL_SECONDS + STALE_SECONDS + 30), "Матанализ");
+        cache.restore(List.of(expired));
+
+        // запись слишком стара, чтобы отдать её сразу: ждём загрузку
+        CompletableFuture<GroupSchedule> result = cache.getAsync("4354");
+        assertFalse(result.isDone());
+        loader.last().completeExceptionally(new IOException("API недоступно"));
+        assertSame(expired, result.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void missWithoutFallbackReportsLoaderError() {
+        ManualLoader loader = new ManualLoader();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+
+        CompletableFuture<GroupSchedule> result = cache.getAsync("4354");
+        loader.last().completeExceptionally(new IOException("API недоступно"));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, error.getCause());
+        assertNull(cache.peek("4354"));
+        // неудачная загрузка не остаётся в полёте: следующий промах идёт в API заново
+        cache.getAsync("4354");
+        assertEquals(2, loader.calls());
+    }
+
+    // API без списков номеров отвечает на пакет без групп: они догружаются по одной, новых пакетов нет
+    @Test
+    void batchWithoutGroupsSwitchesToSingleLoads() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        loader.batchAnswer = Map.of();
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+
+        CompletableFuture<Integer> preloaded = cache.preload(List.of("1000", "1001", "1002", "1003"), 2, 1);
+        assertEquals(2, loader.calls());
+        complete(loader, 0, "1000");
+        complete(loader, 1, "1001");
+        waitUntil(() -> loader.calls() == 4);
+        complete(loader, 2, "1002");
+        complete(loader, 3, "1003");
+
+        assertEquals(4, preloaded.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loader.batchCalls);
+        assertNotNull(cache.peek("1003"));
+    }
+
+    // Группа, которой нет в ответе на пакет, загружается отдельно условным запросом
+    @Test
+    void groupMissingFromBatchIsLoadedAlone() throws Exception {
+        ManualLoader loader = new ManualLoader();
+        GroupSchedule first = schedule("1000", System.currentTimeMillis(), "Матанализ");
+        loader.batchAnswer = Map.of("1000", first);
+        ScheduleCache cache = new ScheduleCache(loader, TTL_SECONDS, STALE_SECONDS, 100);
+        GroupSchedule stale = schedule("1001", ageSeconds(TTL_SECONDS + 30), "Физика");
+        cache.restore(List.of(stale));
+
+        CompletableFuture<Integer> preloaded = cache.preload(List.of("1000", "1001"), 2, 1);
+        assertEquals(1, loader.calls());
+        assertSame(stale, loader.previous.get(0));
+        complete(loader, 0, "1001");
+
+        assertEquals(2, preloaded.get(5, TimeUnit.SECONDS));
+        assertSame(first, cache.peek("1000"));
+        assertEquals(1, loader.batchCalls);
+    }
+
+    private static void complete(ManualLoader loader, int index, String groupNumber) {
+        CompletableFuture<GroupSchedule> load;
+        synchronized (loader) {
+            load = loader.loads.get(index);
+        }
+        load.complete(schedule(groupNumber, System.currentTimeMillis(), "Матанализ"));
+    }
+
+    private static long ageSeconds(long seconds) {
+        return System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(seconds);
+    }
+
+    private interface Condition {
+        boolean holds();
+    }
+
+    private static void waitUntil(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.holds()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 10 с");
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static GroupSchedule schedule(String groupNumber, long fetchedAt, String subject) {
+        DaySchedule[] days = new DaySchedule[GroupSchedule.DAYS_IN_WEEK];
+        days[0] = new DaySchedule(0, "Понедельник", List.of(
+                new Lesson("09:50", "11:20", subject, "Лек", "", "5427", "", WeekParity.BOTH)));
+        return new GroupSchedule(groupNumber, days, fetchedAt);
+    }
+}